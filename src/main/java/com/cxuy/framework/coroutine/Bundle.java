@@ -5,47 +5,126 @@
 
 package com.cxuy.framework.coroutine;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * 任务参数
+ * <p>
+ * 以数组存储键值，基本类型的值直接存放在long数组中，读写均不装箱。
+ * 提交到队列时Bundle被封存：封存后的读取不再加锁；封存后的写入会复制一份新的存储再替换，已读到旧存储的线程不受影响。
+ * 通过{@link Builder}构建的Bundle直接处于封存状态。
+ */
 public class Bundle {
-    private final Map<String, Object> elements = Collections.synchronizedMap(new HashMap<>());
+    private static final byte TYPE_REF = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final Object writeLock = new Object();
+    // 封存后table只会被整体替换，不会原地修改
+    private volatile Table table;
+    private volatile boolean isSealed = false;
+
+    public Bundle() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private Bundle(int capacity) {
+        this.table = new Table(capacity);
+    }
 
     public <T> void putExtra(String key, T element) {
-        elements.put(key, element);
+        if(element instanceof Integer integer) {
+            putInt(key, integer);
+        }
+        else if(element instanceof Long longer) {
+            putLong(key, longer);
+        }
+        else if(element instanceof Float f) {
+            putFloat(key, f);
+        }
+        else if(element instanceof Double d) {
+            putDouble(key, d);
+        }
+        else if(element instanceof Boolean bool) {
+            putBoolean(key, bool);
+        }
+        else {
+            put(key, TYPE_REF, 0, element);
+        }
+    }
+
+    public void putInt(String key, int value) {
+        put(key, TYPE_INT, value, null);
+    }
+
+    public void putLong(String key, long value) {
+        put(key, TYPE_LONG, value, null);
+    }
+
+    public void putFloat(String key, float value) {
+        put(key, TYPE_FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    public void putDouble(String key, double value) {
+        put(key, TYPE_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        put(key, TYPE_BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void putString(String key, String value) {
+        put(key, TYPE_REF, 0, value);
     }
 
     public int getInt(String key, int defaultValue) {
-        Object value = getExtra(key);
-        if(value instanceof Integer integer) {
-            return integer;
+        if(isSealed) {
+            return table.getInt(key, defaultValue);
+        }
+        synchronized(writeLock) {
+            return table.getInt(key, defaultValue);
         }
-        return defaultValue;
     }
 
     public long getLong(String key, long defaultValue) {
-        Object value = getExtra(key);
-        if(value instanceof Long longer) {
-            return longer;
+        if(isSealed) {
+            return table.getLong(key, defaultValue);
+        }
+        synchronized(writeLock) {
+            return table.getLong(key, defaultValue);
         }
-        return defaultValue;
     }
 
     public float getFloat(String key, float defaultValue) {
-        Object value = getExtra(key);
-        if(value instanceof Float f) {
-            return f;
+        if(isSealed) {
+            return table.getFloat(key, defaultValue);
+        }
+        synchronized(writeLock) {
+            return table.getFloat(key, defaultValue);
+        }
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        if(isSealed) {
+            return table.getDouble(key, defaultValue);
+        }
+        synchronized(writeLock) {
+            return table.getDouble(key, defaultValue);
         }
-        return defaultValue;
     }
 
     public boolean getBoolean(String key, boolean defaultValue) {
-        Object value = getExtra(key);
-        if(value instanceof Boolean bool) {
-            return bool;
+        if(isSealed) {
+            return table.getBoolean(key, defaultValue);
+        }
+        synchronized(writeLock) {
+            return table.getBoolean(key, defaultValue);
         }
-        return defaultValue;
     }
 
     public String getString(String key) {
@@ -60,28 +139,264 @@ public class Bundle {
         return defaultValue;
     }
 
+    /**
+     * 获取任意类型的值，基本类型的值会被装箱
+     */
     public Object getExtra(String key) {
         if(key == null) {
             return null;
         }
-        return elements.get(key);
+        if(isSealed) {
+            return table.get(key);
+        }
+        synchronized(writeLock) {
+            return table.get(key);
+        }
     }
 
     public void remove(String key) {
         if(key == null) {
             return;
         }
-        elements.remove(key);
+        synchronized(writeLock) {
+            Table current = table;
+            int index = current.indexOf(key);
+            if(index < 0) {
+                return;
+            }
+            Table target = isSealed ? current.copy(current.keys.length) : current;
+            target.removeAt(index);
+            table = target;
+        }
     }
 
     public void removeAll() {
-        elements.clear();
+        synchronized(writeLock) {
+            if(isSealed) {
+                table = new Table(INITIAL_CAPACITY);
+            }
+            else {
+                table.clear();
+            }
+        }
     }
 
     public boolean contains(String key) {
         if(key == null) {
             return false;
         }
-        return elements.containsKey(key);
+        if(isSealed) {
+            return table.indexOf(key) >= 0;
+        }
+        synchronized(writeLock) {
+            return table.indexOf(key) >= 0;
+        }
+    }
+
+    /**
+     * 封存Bundle，提交任务时调用，此后读取不再加锁
+     */
+    void seal() {
+        if(isSealed) {
+            return;
+        }
+        synchronized(writeLock) {
+            isSealed = true;
+        }
+    }
+
+    private void put(String key, byte type, long bits, Object ref) {
+        if(key == null) {
+            return;
+        }
+        synchronized(writeLock) {
+            Table current = table;
+            int index = current.indexOf(key);
+            Table target;
+            if(isSealed) {
+                target = current.copy(index < 0 ? current.size + 1 : current.keys.length);
+            }
+            else {
+                target = current;
+            }
+            target.set(index, key, type, bits, ref);
+            table = target;
+        }
+    }
+
+    private static final class Table {
+        private String[] keys;
+        private byte[] types;
+        private long[] bits;
+        private Object[] refs;
+        private int size = 0;
+
+        private Table(int capacity) {
+            keys = new String[capacity];
+            types = new byte[capacity];
+            bits = new long[capacity];
+            refs = new Object[capacity];
+        }
+
+        private Table copy(int capacity) {
+            Table table = new Table(Math.max(capacity, size));
+            System.arraycopy(keys, 0, table.keys, 0, size);
+            System.arraycopy(types, 0, table.types, 0, size);
+            System.arraycopy(bits, 0, table.bits, 0, size);
+            System.arraycopy(refs, 0, table.refs, 0, size);
+            table.size = size;
+            return table;
+        }
+
+        /**
+         * 参数通常只有少量几个键，线性查找比哈希表更快；键多为字符串常量，先比较引用
+         */
+        private int indexOf(String key) {
+            for(int i = 0; i < size; i++) {
+                if(keys[i] == key) {
+                    return i;
+                }
+            }
+            int hash = key.hashCode();
+            for(int i = 0; i < size; i++) {
+                String k = keys[i];
+                if(k.hashCode() == hash && k.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void set(int index, String key, byte type, long value, Object ref) {
+            if(index < 0) {
+                if(size == keys.length) {
+                    int capacity = size << 1;
+                    keys = Arrays.copyOf(keys, capacity);
+                    types = Arrays.copyOf(types, capacity);
+                    bits = Arrays.copyOf(bits, capacity);
+                    refs = Arrays.copyOf(refs, capacity);
+                }
+                index = size++;
+                keys[index] = key;
+            }
+            types[index] = type;
+            bits[index] = value;
+            refs[index] = ref;
+        }
+
+        private void removeAt(int index) {
+            int moved = size - index - 1;
+            if(moved > 0) {
+                System.arraycopy(keys, index + 1, keys, index, moved);
+                System.arraycopy(types, index + 1, types, index, moved);
+                System.arraycopy(bits, index + 1, bits, index, moved);
+                System.arraycopy(refs, index + 1, refs, index, moved);
+            }
+            size--;
+            keys[size] = null;
+            refs[size] = null;
+        }
+
+        private void clear() {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(refs, 0, size, null);
+            size = 0;
+        }
+
+        private int getInt(String key, int defaultValue) {
+            int index = key == null ? -1 : indexOf(key);
+            return index >= 0 && types[index] == TYPE_INT ? (int) bits[index] : defaultValue;
+        }
+
+        private long getLong(String key, long defaultValue) {
+            int index = key == null ? -1 : indexOf(key);
+            return index >= 0 && types[index] == TYPE_LONG ? bits[index] : defaultValue;
+        }
+
+        private float getFloat(String key, float defaultValue) {
+            int index = key == null ? -1 : indexOf(key);
+            return index >= 0 && types[index] == TYPE_FLOAT ? Float.intBitsToFloat((int) bits[index]) : defaultValue;
+        }
+
+        private double getDouble(String key, double defaultValue) {
+            int index = key == null ? -1 : indexOf(key);
+            return index >= 0 && types[index] == TYPE_DOUBLE ? Double.longBitsToDouble(bits[index]) : defaultValue;
+        }
+
+        private boolean getBoolean(String key, boolean defaultValue) {
+            int index = key == null ? -1 : indexOf(key);
+            return index >= 0 && types[index] == TYPE_BOOLEAN ? bits[index] != 0 : defaultValue;
+        }
+
+        private Object get(String key) {
+            int index = indexOf(key);
+            if(index < 0) {
+                return null;
+            }
+            long value = bits[index];
+            return switch(types[index]) {
+                case TYPE_INT -> (int) value;
+                case TYPE_LONG -> value;
+                case TYPE_FLOAT -> Float.intBitsToFloat((int) value);
+                case TYPE_DOUBLE -> Double.longBitsToDouble(value);
+                case TYPE_BOOLEAN -> value != 0;
+                default -> refs[index];
+            };
+        }
+    }
+
+    /**
+     * 构建一个已封存的Bundle，适合提交后不再修改的任务参数
+     */
+    public static class Builder {
+        private final Bundle mBundle;
+
+        public Builder() {
+            this(INITIAL_CAPACITY);
+        }
+
+        public Builder(int expectedSize) {
+            mBundle = new Bundle(Math.max(expectedSize, 1));
+        }
+
+        public Builder putInt(String key, int value) {
+            mBundle.putInt(key, value);
+            return this;
+        }
+
+        public Builder putLong(String key, long value) {
+            mBundle.putLong(key, value);
+            return this;
+        }
+
+        public Builder putFloat(String key, float value) {
+            mBundle.putFloat(key, value);
+            return this;
+        }
+
+        public Builder putDouble(String key, double value) {
+            mBundle.putDouble(key, value);
+            return this;
+        }
+
+        public Builder putBoolean(String key, boolean value) {
+            mBundle.putBoolean(key, value);
+            return this;
+        }
+
+        public Builder putString(String key, String value) {
+            mBundle.putString(key, value);
+            return this;
+        }
+
+        public <T> Builder putExtra(String key, T element) {
+            mBundle.putExtra(key, element);
+            return this;
+        }
+
+        public Bundle build() {
+            mBundle.seal();
+            return mBundle;
+        }
     }
 }
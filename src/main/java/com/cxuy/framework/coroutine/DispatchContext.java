@@ -7,16 +7,43 @@ package com.cxuy.framework.coroutine;
 
 import com.cxuy.framework.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public class DispatchContext {
+    private static final AtomicIntegerFieldUpdater<DispatchContext> SLOT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(DispatchContext.class, "slot");
+
     private final DispatchQueue dispatchQueue;
     private final long taskId;
 
     private final Object cancelLock = new Object();
-    private boolean isCancelled;
+    // 写入由cancelLock保护，读取无需加锁
+    private volatile boolean isCancelled;
 
     private final Object bundleLock = new Object();
     private Bundle bundle;
 
+    // 任务尚在队列中等待时指向其任务项，取消时据此从队列中移除
+    volatile DispatchQueue.TaskItem item;
+    private volatile String tag;
+    private volatile DispatchQueue.Priority priority = DispatchQueue.Priority.DEFAULT;
+    // 提交位置，仅在队列开启慢任务检测时记录
+    volatile Throwable submitSite;
+    // 计划执行的时间（System.nanoTime），仅在队列开启指标时记录
+    volatile long scheduledNanos;
+    // 被取消时的回调，用于结束关联的DispatchFuture
+    private volatile Runnable cancelListener;
+    // 有容量限制的队列中，任务在开始执行或被取消前占用一个名额
+    private volatile int slot = 0;
+
+    // 以下字段由cancelLock保护
+    private DispatchContext parent;
+    private Set<DispatchContext> children;
+
     public DispatchContext(long taskId, DispatchQueue queue) {
         this.taskId = taskId;
         this.dispatchQueue = queue;
@@ -41,17 +68,121 @@ public class DispatchContext {
         return bundle;
     }
 
+    @Nullable
+    public String getTag() {
+        return tag;
+    }
+
+    void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public DispatchQueue.Priority getPriority() {
+        return priority;
+    }
+
+    void setPriority(DispatchQueue.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * 关联子任务，当前任务被取消时子任务一并取消
+     * 若当前任务已被取消，子任务会被立即取消
+     *
+     * @param child 子任务的上下文
+     */
+    public void attach(DispatchContext child) {
+        if(child == null || child == this) {
+            return;
+        }
+        boolean cancelChild;
+        synchronized(cancelLock) {
+            cancelChild = isCancelled;
+            if(!cancelChild) {
+                if(children == null) {
+                    children = new HashSet<>();
+                }
+                children.add(child);
+            }
+        }
+        if(cancelChild) {
+            child.cancel();
+            return;
+        }
+        synchronized(child.cancelLock) {
+            child.parent = this;
+        }
+    }
+
     public void cancel() {
+        List<DispatchContext> needCancel;
         synchronized (cancelLock) {
+            if(isCancelled) {
+                return;
+            }
             isCancelled = true;
+            needCancel = children == null ? null : new ArrayList<>(children);
+            children = null;
+        }
+        if(dispatchQueue != null) {
+            dispatchQueue.onCancelled(this);
+        }
+        Runnable listener = cancelListener;
+        if(listener != null) {
+            listener.run();
         }
+        if(needCancel != null) {
+            for(DispatchContext child : needCancel) {
+                child.cancel();
+            }
+        }
+        detach();
     }
 
     public boolean isCancel() {
-        boolean hasCancelled;
-        synchronized (cancelLock) {
-            hasCancelled = isCancelled;
+        return isCancelled;
+    }
+
+    void setCancelListener(Runnable listener) {
+        this.cancelListener = listener;
+        if(isCancelled && listener != null) { // 设置前已被取消
+            listener.run();
+        }
+    }
+
+    void occupySlot() {
+        slot = 1;
+    }
+
+    boolean isOccupyingSlot() {
+        return slot == 1;
+    }
+
+    /**
+     * 释放占用的名额，保证只会成功一次
+     *
+     * @return 此前占用名额时返回true
+     */
+    boolean releaseSlot() {
+        return SLOT_UPDATER.compareAndSet(this, 1, 0);
+    }
+
+    /**
+     * 任务结束（执行完毕或被取消）后与父任务解除关联，避免父任务持有已结束的子任务
+     */
+    void detach() {
+        DispatchContext p;
+        synchronized(cancelLock) {
+            p = parent;
+            parent = null;
+        }
+        if(p == null) {
+            return;
+        }
+        synchronized(p.cancelLock) {
+            if(p.children != null) {
+                p.children.remove(this);
+            }
         }
-        return hasCancelled;
     }
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import com.cxuy.framework.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * 异步任务的结果
+ * <p>
+ * 通过{@link DispatchQueue#submit(Callable)}获得，可用{@link #thenOn(DispatchQueue, Function)}等方法
+ * 将后续处理切换到其他队列上执行。后续处理在结果就绪后才提交，整个过程中没有线程因等待结果而挂起。
+ * 任一环节失败或被取消时，后续环节不再执行，直接以相同的异常结束。
+ */
+public class DispatchFuture<T> {
+    public interface Callback<T> {
+        void onComplete(@Nullable T result, @Nullable Throwable error);
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCESS = 1;
+    private static final int STATE_FAILED = 2;
+
+    private final Object stateLock = new Object();
+    private int state = STATE_PENDING;
+    private T result;
+    private Throwable error;
+    // 结果就绪前注册的回调，由stateLock保护
+    private List<Runnable> callbacks;
+
+    private volatile DispatchContext context;
+
+    DispatchFuture() {  }
+
+    public static <T> DispatchFuture<T> completed(T value) {
+        DispatchFuture<T> future = new DispatchFuture<>();
+        future.complete(value);
+        return future;
+    }
+
+    public static <T> DispatchFuture<T> failed(Throwable error) {
+        DispatchFuture<T> future = new DispatchFuture<>();
+        future.fail(error);
+        return future;
+    }
+
+    /**
+     * 以CompletionStage的结果结束，CompletionStage异常结束时以其原始异常失败
+     * 取消返回的结果不会取消CompletionStage
+     */
+    public static <T> DispatchFuture<T> of(CompletionStage<T> stage) {
+        DispatchFuture<T> future = new DispatchFuture<>();
+        stage.whenComplete((value, throwable) -> {
+            if(throwable == null) {
+                future.complete(value);
+            }
+            else {
+                future.fail(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 结果就绪后在指定队列上转换结果
+     *
+     * @param queue 执行转换的队列
+     * @param fn 转换函数
+     * @return 转换后的结果
+     */
+    public <R> DispatchFuture<R> thenOn(DispatchQueue queue, Function<? super T, ? extends R> fn) {
+        DispatchFuture<R> next = new DispatchFuture<>();
+        onComplete(() -> {
+            if(next.isDone()) {
+                return;
+            }
+            if(error != null) {
+                next.fail(error);
+                return;
+            }
+            next.dispatch(queue, () -> next.complete(fn.apply(result)));
+        });
+        return next;
+    }
+
+    /**
+     * 结果就绪后在指定队列上发起下一个异步操作，返回的结果在该操作完成后就绪
+     *
+     * @param queue 发起操作的队列
+     * @param fn 返回下一个异步操作的结果
+     */
+    public <R> DispatchFuture<R> thenComposeOn(DispatchQueue queue, Function<? super T, DispatchFuture<R>> fn) {
+        DispatchFuture<R> next = new DispatchFuture<>();
+        onComplete(() -> {
+            if(next.isDone()) {
+                return;
+            }
+            if(error != null) {
+                next.fail(error);
+                return;
+            }
+            next.dispatch(queue, () -> {
+                DispatchFuture<R> inner = fn.apply(result);
+                if(inner == null) {
+                    next.complete(null);
+                    return;
+                }
+                inner.onComplete(() -> {
+                    if(inner.error != null) {
+                        next.fail(inner.error);
+                    }
+                    else {
+                        next.complete(inner.result);
+                    }
+                });
+            });
+        });
+        return next;
+    }
+
+    /**
+     * 结果就绪后（无论成功或失败）在指定队列上回调
+     */
+    public DispatchFuture<T> whenCompleteOn(DispatchQueue queue, Callback<? super T> callback) {
+        DispatchFuture<T> next = new DispatchFuture<>();
+        onComplete(() -> {
+            if(next.isDone()) {
+                return;
+            }
+            next.dispatch(queue, () -> {
+                callback.onComplete(result, error);
+                if(error != null) {
+                    next.fail(error);
+                }
+                else {
+                    next.complete(result);
+                }
+            });
+        });
+        return next;
+    }
+
+    /**
+     * 取消尚未执行的任务，结果以{@link CancellationException}结束
+     * 只影响当前环节及其后续环节：取消由thenOn等方法得到的结果不会取消上游的任务，
+     * 上游结果可能还有其他后续环节。需要停止上游任务时应取消上游的结果
+     *
+     * @return 结果此前尚未就绪时返回true
+     */
+    public boolean cancel() {
+        boolean cancelled = fail(new CancellationException());
+        DispatchContext current = context;
+        if(current != null) {
+            current.cancel();
+        }
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        synchronized(stateLock) {
+            return state != STATE_PENDING;
+        }
+    }
+
+    public boolean isCancelled() {
+        synchronized(stateLock) {
+            return state == STATE_FAILED && error instanceof CancellationException;
+        }
+    }
+
+    /**
+     * 当前环节任务的上下文，任务尚未提交时为null
+     */
+    @Nullable
+    public DispatchContext getContext() {
+        return context;
+    }
+
+    /**
+     * 阻塞等待结果
+     * 会挂起调用线程，仅用于测试或程序入口，不要在队列的任务中调用
+     */
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized(stateLock) {
+            while(state == STATE_PENDING) {
+                stateLock.wait();
+            }
+            if(state == STATE_SUCCESS) {
+                return result;
+            }
+            if(error instanceof CancellationException) {
+                throw (CancellationException) error;
+            }
+            throw new ExecutionException(error);
+        }
+    }
+
+    void run(Callable<T> callable) {
+        if(isDone()) {
+            return;
+        }
+        try {
+            complete(callable.call());
+        }
+        catch(Throwable e) {
+            failAndRethrowError(e);
+        }
+    }
+
+    /**
+     * 关联执行任务的上下文，上下文被取消（包括经由标签或父任务取消）时结果随之结束
+     */
+    void bind(DispatchContext context) {
+        this.context = context;
+        context.setCancelListener(() -> fail(new CancellationException()));
+    }
+
+    boolean complete(T value) {
+        return finish(STATE_SUCCESS, value, null);
+    }
+
+    boolean fail(Throwable throwable) {
+        return finish(STATE_FAILED, null, throwable);
+    }
+
+    private void dispatch(DispatchQueue queue, Runnable action) {
+        try {
+            bind(queue.async((context) -> {
+                if(isDone()) {
+                    return;
+                }
+                try {
+                    action.run();
+                }
+                catch(Throwable e) {
+                    failAndRethrowError(e);
+                }
+            }));
+        }
+        catch(RuntimeException e) { // 目标队列已销毁或已满
+            fail(e);
+        }
+    }
+
+    /**
+     * Error同样使结果以失败结束，避免等待者永远挂起；Error本身仍原样抛出，交由线程处理
+     */
+    private void failAndRethrowError(Throwable throwable) {
+        fail(throwable);
+        if(throwable instanceof Error fatal) {
+            throw fatal;
+        }
+    }
+
+    private void onComplete(Runnable callback) {
+        synchronized(stateLock) {
+            if(state == STATE_PENDING) {
+                if(callbacks == null) {
+                    callbacks = new ArrayList<>(1);
+                }
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    private boolean finish(int newState, T value, Throwable throwable) {
+        List<Runnable> needNotify;
+        synchronized(stateLock) {
+            if(state != STATE_PENDING) {
+                return false;
+            }
+            state = newState;
+            result = value;
+            error = throwable;
+            needNotify = callbacks;
+            callbacks = null;
+            stateLock.notifyAll();
+        }
+        if(needNotify != null) {
+            for(Runnable callback : needNotify) {
+                callback.run();
+            }
+        }
+        return true;
+    }
+}
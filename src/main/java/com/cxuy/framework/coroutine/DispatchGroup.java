@@ -8,26 +8,42 @@ package com.cxuy.framework.coroutine;
 import com.cxuy.framework.annotation.Nullable;
 import com.cxuy.framework.coroutine.exception.GroupHasDoneException;
 
-import java.util.*;
-import java.util.concurrent.Semaphore;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * 任务组
+ * <p>
+ * 通过{@link #async(DispatchQueue, DispatchQueue.Task)}添加任务，{@link #notify(DispatchQueue, DispatchQueue.Task)}提交全部任务，
+ * 所有任务结束后在指定队列上执行通知任务。等待过程使用原子计数，最后一个结束的任务负责提交通知任务，不占用任何线程。
+ */
 public class DispatchGroup {
 
     public DispatchGroup() {
         this(true);
     }
 
+    /**
+     * @param autoLeave 为true时任务执行结束即视为离开任务组；为false时需为每个任务调用一次{@link #leave()}
+     */
     public DispatchGroup(boolean autoLeave) {
         this.autoLeave = autoLeave;
     }
 
-    private boolean isDone = false;
+    private volatile boolean isDone = false;
     private final boolean autoLeave;
     private final Object builderLock = new Object();
-    private final Semaphore semaphore = new Semaphore(0);
 
+    // 以下字段由builderLock保护
+    @Nullable
+    private List<Entry> entries;
+    // 提交前调用leave()的次数
+    private int earlyLeaves = 0;
     @Nullable
-    private Transaction.Builder transactionBuilder;
+    private Join join;
 
     public void async(DispatchQueue queue, DispatchQueue.Task task) {
         async(queue, null, task);
@@ -41,17 +57,50 @@ public class DispatchGroup {
             throw new GroupHasDoneException();
         }
         synchronized(builderLock) {
-            if(transactionBuilder == null) {
-                this.transactionBuilder = new Transaction.Builder();
+            if(entries == null) {
+                entries = new ArrayList<>();
             }
-            transactionBuilder.append(queue, bundle, task);
+            entries.add(new Entry(queue, bundle, task));
         }
     }
 
+    public int parallelFor(DispatchQueue queue, int from, int to, IntConsumer body) {
+        return parallelFor(queue, from, to, 0, body);
+    }
+
+    /**
+     * 将区间[from, to)切分为若干块加入任务组，每块作为一个任务，块内按顺序执行
+     *
+     * @param chunk 每块的大小，小于等于0时根据数据量与队列的并发度自动计算
+     * @return 加入的任务数；不自动离开的任务组需调用相同次数的{@link #leave()}
+     */
+    public int parallelFor(DispatchQueue queue, int from, int to, int chunk, IntConsumer body) {
+        if(queue == null || body == null || from >= to) {
+            return 0;
+        }
+        int step = ParallelLoop.chunkSize(queue, from, to, chunk);
+        int count = 0;
+        for(long start = from; start < to; start += step) {
+            int begin = (int) start;
+            int end = (int) Math.min(start + step, to);
+            async(queue, (context) -> {
+                for(int index = begin; index < end; index++) {
+                    body.accept(index);
+                }
+            });
+            count++;
+        }
+        return count;
+    }
+
     public void notify(DispatchQueue queue, DispatchQueue.Task task) {
         notify(queue, null, task);
     }
 
+    /**
+     * 提交全部任务，所有任务结束后在queue上执行task
+     * 某个任务提交失败时视为已离开，其余任务照常提交，全部提交完毕后抛出首个失败的异常
+     */
     public void notify(DispatchQueue queue, Bundle bundle, DispatchQueue.Task task) {
         if(queue == null || task == null) {
             return;
@@ -59,87 +108,113 @@ public class DispatchGroup {
         if(isDone) {
             throw new GroupHasDoneException();
         }
-        Transaction newTransaction;
+        List<Entry> submitting;
+        Join newJoin;
         synchronized(builderLock) {
-            if(transactionBuilder == null) {
+            if(entries == null || join != null) {
                 return;
             }
-            newTransaction = transactionBuilder
-                    .notifyTask(queue, task)
-                    .build();
-            transactionBuilder = null;
-        }
-        Map<DispatchQueue.Task, DispatchQueue> tasks = newTransaction.tasks;
-        Map<DispatchQueue.Task, Bundle> bundles = newTransaction.bundles;
-        for(Map.Entry<DispatchQueue.Task, DispatchQueue> entry : tasks.entrySet()) {
-            entry.getValue().async(bundles.get(entry.getKey()), (context) -> {
-                entry.getKey().run(context);
-                if(autoLeave) {
-                    semaphore.release();
-                }
-            });
+            submitting = entries;
+            entries = null;
+            newJoin = new Join(submitting.size() - earlyLeaves, queue, bundle, task);
+            join = newJoin;
         }
-        DispatchQueue.io.async(bundle, (context) -> {
+        RuntimeException failure = null;
+        for(Entry entry : submitting) {
+            // 任务开始执行与执行前被取消只有一方生效，保证只计数一次
+            AtomicBoolean settled = new AtomicBoolean(false);
             try {
-                semaphore.acquire(tasks.size());
-                newTransaction.notifyQueue.async(bundle, newTransaction.notifyTask);
-                isDone = true;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                DispatchContext submitted = entry.queue.async(entry.bundle, (context) -> {
+                    if(!settled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        entry.task.run(context);
+                    }
+                    finally {
+                        if(autoLeave) {
+                            newJoin.countDown();
+                        }
+                    }
+                });
+                // 执行前被取消（队列销毁、溢出丢弃、按标签取消）的任务不会执行也不会离开，直接计数
+                submitted.setCancelListener(() -> {
+                    if(settled.compareAndSet(false, true)) {
+                        newJoin.countDown();
+                    }
+                });
             }
-        });
+            catch(RuntimeException e) { // 提交失败的任务不会执行也不会离开，直接计数，其余任务照常提交
+                newJoin.countDown();
+                if(failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if(newJoin.remaining.get() <= 0) { // 提交前已全部离开
+            newJoin.fire();
+        }
+        if(failure != null) {
+            throw failure;
+        }
     }
 
     public void leave() {
         if(isDone) {
             throw new GroupHasDoneException();
         }
-        semaphore.release();
-    }
-
-    private static final class Transaction {
-        public final Semaphore semaphore = new Semaphore(0);
-        public final Map<DispatchQueue.Task, Bundle> bundles;
-        public final Map<DispatchQueue.Task, DispatchQueue> tasks;
-        public final DispatchQueue notifyQueue;
-        public final DispatchQueue.Task notifyTask;
-        public Transaction(Map<DispatchQueue.Task, Bundle> bundles, Map<DispatchQueue.Task, DispatchQueue> tasks, DispatchQueue notifyQueue, DispatchQueue.Task notifyTask) {
-            this.bundles = bundles;
-            this.tasks = tasks;
-            this.notifyQueue  = notifyQueue;
-            this.notifyTask = notifyTask;
+        Join current;
+        synchronized(builderLock) {
+            current = join;
+            if(current == null) {
+                earlyLeaves++;
+                return;
+            }
         }
+        current.countDown();
+    }
 
-        public static final class Builder {
-            public final Map<DispatchQueue.Task, Bundle> bundles = new HashMap<>();
-            private final Map<DispatchQueue.Task, DispatchQueue> tasks = new HashMap<>();
-            private DispatchQueue notifyQueue;
-            private DispatchQueue.Task notifyTask;
-
-            public Builder append(DispatchQueue queue, Bundle bundle, DispatchQueue.Task task) {
-                tasks.put(task, queue);
-                if(bundle != null) {
-                    bundles.put(task, bundle);
-                }
-                return this;
-            }
+    private static final class Entry {
+        private final DispatchQueue queue;
+        private final Bundle bundle;
+        private final DispatchQueue.Task task;
 
-            public Builder remove(DispatchQueue.Task task) {
-                tasks.remove(task);
+        private Entry(DispatchQueue queue, Bundle bundle, DispatchQueue.Task task) {
+            this.queue = queue;
+            this.bundle = bundle;
+            this.task = task;
+        }
+    }
 
-                return this;
-            }
+    private final class Join {
+        private final AtomicInteger remaining;
+        private final DispatchQueue notifyQueue;
+        private final Bundle bundle;
+        private final DispatchQueue.Task notifyTask;
+        private final AtomicInteger fired = new AtomicInteger();
+
+        private Join(int count, DispatchQueue notifyQueue, Bundle bundle, DispatchQueue.Task notifyTask) {
+            this.remaining = new AtomicInteger(count);
+            this.notifyQueue = notifyQueue;
+            this.bundle = bundle;
+            this.notifyTask = notifyTask;
+        }
 
-            public Builder notifyTask(DispatchQueue queue, DispatchQueue.Task task) {
-                notifyQueue = queue;
-                this.notifyTask = task;
-                return this;
+        private void countDown() {
+            if(remaining.decrementAndGet() == 0) {
+                fire();
             }
+        }
 
-            public Transaction build() {
-                return new Transaction(bundles, tasks, notifyQueue, notifyTask);
+        private void fire() {
+            if(!fired.compareAndSet(0, 1)) {
+                return;
             }
-
+            isDone = true;
+            notifyQueue.async(bundle, notifyTask);
         }
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DispatchQueue的运行指标
+ * <p>
+ * 记录提交、完成、取消、拒绝的任务数，等待执行的任务数，以及排队耗时与执行耗时的分布。
+ * 只统计普通任务，IDLE任务不计入。未开启指标的队列不会创建此对象。
+ */
+public final class DispatchMetrics {
+    private static final Object REPORTER_LOCK = new Object();
+    private static ScheduledExecutorService reporter;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder depth = new LongAdder();
+    private final Recorder waitTime = new Recorder();
+    private final Recorder runTime = new Recorder();
+
+    DispatchMetrics() {  }
+
+    void onSubmitted() {
+        submitted.increment();
+        depth.increment();
+    }
+
+    void onRejected() {
+        rejected.increment();
+    }
+
+    void onCancelled() {
+        cancelled.increment();
+        depth.decrement();
+    }
+
+    void onStarted(long waitNanos) {
+        depth.decrement();
+        waitTime.record(waitNanos);
+    }
+
+    void onFinished(long runNanos, boolean success) {
+        if(success) {
+            completed.increment();
+        }
+        else {
+            failed.increment();
+        }
+        runTime.record(runNanos);
+    }
+
+    Snapshot snapshot(DispatchQueue queue) {
+        return new Snapshot(queue.name, queue.getStatus(), submitted.sum(), completed.sum(), failed.sum(),
+                cancelled.sum(), rejected.sum(), Math.max(depth.sum(), 0), waitTime.snapshot(), runTime.snapshot());
+    }
+
+    static ScheduledFuture<?> schedule(DispatchQueue queue, long periodNanos, DispatchQueue.MetricsListener listener) {
+        ScheduledExecutorService executor;
+        synchronized(REPORTER_LOCK) {
+            if(reporter == null) {
+                ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+                    Thread thread = new Thread(runnable, "DispatchMetrics#Reporter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                pool.setRemoveOnCancelPolicy(true);
+                reporter = pool;
+            }
+            executor = reporter;
+        }
+        WeakReference<DispatchQueue> ref = new WeakReference<>(queue);
+        ScheduledFuture<?>[] self = new ScheduledFuture<?>[1];
+        self[0] = executor.scheduleAtFixedRate(() -> {
+            DispatchQueue current = ref.get();
+            DispatchMetrics metrics = current == null ? null : current.getMetrics();
+            if(metrics == null) { // 队列已被回收
+                ScheduledFuture<?> future = self[0];
+                if(future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            listener.onSnapshot(current, metrics.snapshot(current));
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        return self[0];
+    }
+
+    public static final class Snapshot {
+        public final String name;
+        public final DispatchQueue.Status status;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long cancelled;
+        public final long rejected;
+        // 已提交但尚未开始执行的任务数
+        public final long depth;
+        // 从计划执行时间到开始执行的耗时
+        public final Histogram waitTime;
+        public final Histogram runTime;
+
+        private Snapshot(String name, DispatchQueue.Status status, long submitted, long completed, long failed,
+                         long cancelled, long rejected, long depth, Histogram waitTime, Histogram runTime) {
+            this.name = name;
+            this.status = status;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.rejected = rejected;
+            this.depth = depth;
+            this.waitTime = waitTime;
+            this.runTime = runTime;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{status=" + status + ", submitted=" + submitted + ", completed=" + completed
+                    + ", failed=" + failed + ", cancelled=" + cancelled + ", rejected=" + rejected
+                    + ", depth=" + depth + ", wait=" + waitTime + ", run=" + runTime + "}";
+        }
+    }
+
+    /**
+     * 耗时分布，单位纳秒
+     * 每个2的幂区间再均分为4档，分位数的相对误差不超过25%
+     */
+    public static final class Histogram {
+        private final long[] buckets;
+        public final long count;
+        public final long total;
+        public final long max;
+
+        private Histogram(long[] buckets, long count, long total, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long mean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * @param percentile 分位，取值0~100
+         * @return 对应分位所在档位的下界
+         */
+        public long percentile(double percentile) {
+            if(count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+            long seen = 0;
+            for(int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if(seen >= Math.max(rank, 1)) {
+                    return Math.min(lowerBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "{count=" + count + ", mean=" + mean() + "ns, p50=" + percentile(50) + "ns, p99=" + percentile(99)
+                    + "ns, max=" + max + "ns}";
+        }
+    }
+
+    private static final class Recorder {
+        private static final int BUCKET_COUNT = 256;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            buckets.incrementAndGet(indexOf(value));
+            total.add(value);
+            long current;
+            while(value > (current = max.get()) && !max.compareAndSet(current, value));
+        }
+
+        Histogram snapshot() {
+            long[] copy = new long[BUCKET_COUNT];
+            long count = 0;
+            for(int i = 0; i < BUCKET_COUNT; i++) {
+                copy[i] = buckets.get(i);
+                count += copy[i];
+            }
+            return new Histogram(copy, count, total.sum(), max.get());
+        }
+    }
+
+    private static int indexOf(long value) {
+        if(value < 4) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & 3;
+        return (exponent << 2) + sub;
+    }
+
+    private static long lowerBound(int index) {
+        if(index < 4) {
+            return index;
+        }
+        int exponent = index >>> 2;
+        int sub = index & 3;
+        return (4L + sub) << (exponent - 2);
+    }
+}
@@ -5,11 +5,18 @@
 
 package com.cxuy.framework.coroutine;
 
+import com.cxuy.framework.annotation.Nullable;
 import com.cxuy.framework.util.TimeUtil;
 
 import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 public class DispatchQueue {
     public interface Task {
@@ -20,6 +27,10 @@ public class DispatchQueue {
         void onChanged(DispatchQueue queue, Status status);
     }
 
+    public interface MetricsListener {
+        void onSnapshot(DispatchQueue queue, DispatchMetrics.Snapshot snapshot);
+    }
+
     /**
      * 停车任务
      * 在队列空闲时候，会取出这个任务执行
@@ -39,21 +50,39 @@ public class DispatchQueue {
     // CPU核心数量
     private static final int CPU_CORE = Runtime.getRuntime().availableProcessors();
 
-    // 自定义线程池
-    private static final Object REF_POOL_LOCK = new Object();
-    private static int coroutinePoolRefCount = 0;
-    private static ThreadPoolExecutor coroutinePool;
+    // 协程线程池默认参数
+    private static final int DEFAULT_POOL_CORE = Math.max(CPU_CORE / 2, 1);
+    private static final int DEFAULT_POOL_MAX = Math.max(CPU_CORE * 2, 2);
+    private static final int POOL_QUEUE_CAPACITY = 128;
+    private static final long POOL_KEEP_ALIVE_SECONDS = 30;
 
     private static final String DEFAULT_DISPATCHER_QUEUE = "DispatchQueue#default";
     private static final String DEFAULT_DISPATCHER_IO = "DispatchQueue#IO";
     private static final String DEFAULT_DISPATCHER_NAME = "default_DispatcherQueue#Name";
-    private static final int ITEM_POOL_MAX = 20;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final int DEFAULT_RECYCLER_CAPACITY = 256;
+
+    private static final int WORKER_DEAD = 0;
+    private static final int WORKER_RUNNING = 1;
+    private static final int WORKER_PARKED = 2;
+    private static final long WORKER_EXIT = -1;
+    // 分发线程空闲后的默认存活时间；分发线程不是守护线程，默认空闲后立即退出，避免拖延程序退出
+    private static final long DEFAULT_KEEP_ALIVE_NANOS = 0;
+    // 挂起前的默认自旋时间，单核时自旋只会抢占提交者，不自旋
+    private static final long DEFAULT_SPIN_NANOS = CPU_CORE > 1 ? TimeUnit.MICROSECONDS.toNanos(20) : 0;
+    // 多工作线程模式下等待工作线程上的任务结束时的最长挂起时间，任务全部结束时会被提前唤醒
+    private static final long STEALING_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
 
     private static final Object TOKEN_LOCK = new Object();
     private static final Set<String> TOKEN_SET = new HashSet<>();
 
-    public static final DispatchQueue standard = new DispatchQueue(DEFAULT_DISPATCHER_QUEUE);
-    public static final DispatchQueue io = new DispatchQueue(DEFAULT_DISPATCHER_IO, true);
+    public static final DispatchQueue standard = new Builder()
+            .name(DEFAULT_DISPATCHER_QUEUE)
+            .build();
+    public static final DispatchQueue io = new Builder()
+            .name(DEFAULT_DISPATCHER_IO)
+            .coroutine(true)
+            .build();
 
     protected final String name;
     protected final boolean isCoroutine;
@@ -66,19 +95,68 @@ public class DispatchQueue {
 
     private final Object threadLock = new Object();
     protected Thread thread;
-
-    private final Map<Task, DispatchContext> contextMap = new HashMap<>();
-
-    private final Object taskQueueLock = new Object();
-    protected final PriorityQueue<TaskItem> taskQueue = new PriorityQueue<>();
+    // 分发线程状态，提交任务时仅通过CAS判断是否需要唤醒或创建线程
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_DEAD);
+
+    // 提交入口，任意线程无锁写入，由分发线程取出后放入下面的队列
+    private final MpscQueue<TaskItem> intake = new MpscQueue<>();
+    // 已取消但仍在队列中的任务，由分发线程取出后立即从队列中移除
+    private final MpscQueue<DispatchContext> cancelIntake = new MpscQueue<>();
+    // 按标签分组的未结束任务
+    private final ConcurrentHashMap<String, Set<DispatchContext>> tagMap = new ConcurrentHashMap<>();
+
+    // 容量限制，0表示不限制；等待执行的任务数不超过capacity
+    private final int capacity;
+    // 按键合并提交的任务，首次使用时创建，由keyedSchedulerLock保护创建过程
+    private final Object keyedSchedulerLock = new Object();
+    private volatile KeyedScheduler keyedScheduler;
+    // 慢任务预算，0表示不检测
+    private final long slowTaskNanos;
+    // 运行指标，未开启时为null
+    private final DispatchMetrics metrics;
+    // 定期回调指标快照，由Builder在队列构建完成后开启
+    private volatile ScheduledFuture<?> metricsReport;
+    // 协程队列独占的线程池，由poolLock保护
+    private final Object poolLock = new Object();
+    private ThreadPoolExecutor coroutinePool;
+    private final int poolCoreSize;
+    private final int poolMaxSize;
+    // 分发线程每次调度连续执行的任务数量上限
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Object capacityLock = new Object();
+    private final AtomicInteger blockedSubmitters = new AtomicInteger();
+    // 仅DROP_OLDEST策略使用，按提交顺序记录占用名额的任务
+    private final ConcurrentLinkedQueue<DispatchContext> pendingOrder;
+    private final AtomicInteger pendingOrderSweep = new AtomicInteger();
+    // 多工作线程模式下已交给工作线程、尚未结束的任务数，全部结束时通知分发线程更新状态
+    private final AtomicInteger stealingInFlight = new AtomicInteger();
+    private final AtomicBoolean stealingDrained = new AtomicBoolean();
+    // 以下字段仅由分发线程访问
+    // 已到期、等待执行的任务，按优先级分道，同一通道内按到期顺序排列
+    private final PriorityLanes<TaskItem> readyLanes = new PriorityLanes<>(false);
+    // 尚未到期的延时任务
+    private final TaskTimer timer;
+    // 定时器中周期任务的数量，只剩周期任务时队列视为空闲
+    private int timedPeriodic = 0;
     protected volatile long lastIDLETimestamp;
     protected final PriorityQueue<TaskItem> idleQueue = new PriorityQueue<>();
-    protected PriorityQueue<TaskItem> queue;
+    private boolean isIdling = false;
+    private boolean isDormant = false;
+    private long dormantSinceNanos;
+    private final long keepAliveNanos;
+    private final long spinNanos;
 
-    protected final Object itemPoolLock = new Object();
-    protected final Queue<TaskItem> itemPool = new LinkedList<>();
+    // 任务项对象池，提交线程取出、分发线程归还
+    private final ItemRecycler<TaskItem> itemRecycler;
 
-    protected long submitTaskId = 0;
+    protected final AtomicLong submitTaskId = new AtomicLong();
+
+    // 多工作线程模式下的任务窃取执行器，串行队列为null
+    private final WorkStealingPool stealingPool;
+    // 协程队列使用虚拟线程时的执行器，使用共享线程池时为null
+    private final VirtualThreadExecutor virtualExecutor;
 
     public DispatchQueue() {
         this(DEFAULT_DISPATCHER_NAME, false);
@@ -93,14 +171,36 @@ public class DispatchQueue {
     }
 
     public DispatchQueue(String name, boolean isCoroutine) {
-        this.name = name;
-        this.isCoroutine = isCoroutine;
+        this(new Builder().name(name).coroutine(isCoroutine));
+    }
+
+    protected DispatchQueue(Builder builder) {
+        this.name = builder.mName;
+        this.isCoroutine = builder.mCoroutine;
+        this.timer = builder.mTimerType == TimerType.WHEEL ? new TimingWheel() : new HeapTaskTimer();
+        this.stealingPool = !isCoroutine && builder.mWorkers > 1 ? new WorkStealingPool(name, builder.mWorkers, builder.mKeepAliveNanos) : null;
+        this.virtualExecutor = isCoroutine && builder.mVirtualConcurrency > 0 ? new VirtualThreadExecutor(name, builder.mVirtualConcurrency) : null;
+        this.capacity = builder.mCapacity;
+        this.batchSize = builder.mBatchSize;
+        this.itemRecycler = new ItemRecycler<>(builder.mRecyclerCapacity);
+        this.overflowPolicy = builder.mOverflowPolicy;
+        this.pendingOrder = capacity > 0 && overflowPolicy == OverflowPolicy.DROP_OLDEST ? new ConcurrentLinkedQueue<>() : null;
+        this.poolCoreSize = builder.mPoolCoreSize;
+        this.poolMaxSize = builder.mPoolMaxSize;
+        this.keepAliveNanos = builder.mKeepAliveNanos;
+        this.spinNanos = builder.mSpinNanos;
+        this.slowTaskNanos = builder.mSlowTaskNanos;
+        this.metrics = builder.mMetrics ? new DispatchMetrics() : null;
         setStatus(Status.INIT);
-        if(isCoroutine) {
-            synchronized(REF_POOL_LOCK) {
-                coroutinePoolRefCount++;
-            }
-        }
+    }
+
+    /**
+     * 是否为串行队列
+     *
+     * @return 串行队列中的任务按提交顺序在同一个线程上依次执行
+     */
+    public boolean isSerial() {
+        return !isCoroutine && stealingPool == null;
     }
 
     public static void once(String token, Task task) {
@@ -120,44 +220,49 @@ public class DispatchQueue {
         standard.async(delay, task);
     }
 
-    private static ThreadPoolExecutor getOrCreatePool() {
-        synchronized(REF_POOL_LOCK) {
-            if(coroutinePool == null) {
-                int core = Math.max(CPU_CORE / 2, 1);
-                int maxCore = Math.max(CPU_CORE * 2, 2);
-                coroutinePool = new ThreadPoolExecutor(
-                        core, // 核心线程数
-                        maxCore, // 最大线程数
-                        30, // 非核心线程存活时间（秒）
+    /**
+     * 获取当前队列独占的协程线程池，首次使用时创建
+     * 线程空闲超过存活时间后自动回收（包括核心线程），队列长期空闲时不占用线程
+     */
+    private ThreadPoolExecutor getOrCreatePool() {
+        synchronized(poolLock) {
+            if(coroutinePool == null && status != Status.DESTROY) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                        poolCoreSize, // 核心线程数
+                        poolMaxSize, // 最大线程数
+                        POOL_KEEP_ALIVE_SECONDS, // 空闲线程存活时间（秒）
                         TimeUnit.SECONDS,
-                        new LinkedBlockingQueue<>(128), // 有界队列
-                        Executors.defaultThreadFactory(),
+                        new LinkedBlockingQueue<>(POOL_QUEUE_CAPACITY), // 有界队列
+                        (runnable) -> new Thread(runnable, name + "#Coroutine-" + threadIndex.getAndIncrement()),
                         new ThreadPoolExecutor.CallerRunsPolicy());  // 拒绝策略
+                pool.allowCoreThreadTimeOut(true);
+                coroutinePool = pool;
             }
             return coroutinePool;
         }
     }
 
-    private static void shutdownPoolIfNeed(boolean await) {
-        synchronized(REF_POOL_LOCK) {
-            if(coroutinePool == null || coroutinePoolRefCount < 0) {
-                coroutinePoolRefCount = 0;
-                return;
-            }
-            // 开始关闭POOL
-            coroutinePool.shutdown();
-            if (await) {
-                try {
-                    if (!coroutinePool.awaitTermination(30, TimeUnit.SECONDS)) {
-                        coroutinePool.shutdownNow();
-                    }
-                } catch (InterruptedException e) {
-                    coroutinePool.shutdownNow();
-                    Thread.currentThread().interrupt();
-                }
-            }
+    private void shutdownPool(boolean await) {
+        ThreadPoolExecutor pool;
+        synchronized(poolLock) {
+            pool = coroutinePool;
             coroutinePool = null;
-            coroutinePoolRefCount = 0;
+        }
+        if(pool == null) {
+            return;
+        }
+        pool.shutdown();
+        if(!await) {
+            return;
+        }
+        try {
+            if(!pool.awaitTermination(POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -203,39 +308,488 @@ public class DispatchQueue {
     }
 
     public DispatchContext async(long delay, Bundle bundle, Task task) throws DispatcherQueueHasDestroyedException {
+        return asyncTagged(null, delay, bundle, task);
+    }
+
+    public DispatchContext asyncTagged(String tag, Task task) {
+        return asyncTagged(tag, 0, null, task);
+    }
+
+    public DispatchContext asyncTagged(String tag, long delay, Task task) {
+        return asyncTagged(tag, delay, null, task);
+    }
+
+    public DispatchContext asyncWithPriority(Priority priority, Task task) {
+        return asyncWithPriority(priority, 0, task);
+    }
+
+    /**
+     * 以指定优先级提交任务
+     * 等待执行的任务按优先级的权重交错出队，高优先级任务不会排在大量低优先级任务之后
+     *
+     * @param priority 优先级，为null时按{@link Priority#DEFAULT}处理
+     */
+    public DispatchContext asyncWithPriority(Priority priority, long delay, Task task) throws DispatcherQueueHasDestroyedException, DispatcherQueueIsFullException {
+        DispatchContext context = enqueue(null, delay, null, priority, task, true);
+        if(context == null) {
+            throw new DispatcherQueueIsFullException(name);
+        }
+        return context;
+    }
+
+    /**
+     * 提交带标签的任务，可通过{@link #cancelAll(String)}批量取消同一标签下尚未结束的任务
+     *
+     * @param tag 任务标签，为null时不分组
+     */
+    public DispatchContext asyncTagged(String tag, long delay, Bundle bundle, Task task) throws DispatcherQueueHasDestroyedException, DispatcherQueueIsFullException {
+        DispatchContext context = enqueue(tag, delay, bundle, null, task, true);
+        if(context == null) {
+            throw new DispatcherQueueIsFullException(name);
+        }
+        return context;
+    }
+
+    @Nullable
+    public DispatchContext tryAsync(Task task) {
+        return tryAsync(null, 0, null, task);
+    }
+
+    @Nullable
+    public DispatchContext tryAsync(long delay, Task task) {
+        return tryAsync(null, delay, null, task);
+    }
+
+    /**
+     * 非阻塞提交任务
+     * 队列已满且按策略无法腾出名额时不会阻塞或抛出异常，而是返回null
+     *
+     * @return 任务上下文，被拒绝时返回null
+     */
+    @Nullable
+    public DispatchContext tryAsync(String tag, long delay, Bundle bundle, Task task) throws DispatcherQueueHasDestroyedException {
+        return enqueue(tag, delay, bundle, null, task, false);
+    }
+
+    private DispatchContext enqueue(String tag, long delay, Bundle bundle, Priority priority, Task task, boolean blocking) {
         if(status == Status.DESTROY) {
             throw new DispatcherQueueHasDestroyedException(name);
         }
         if(task == null) {
             throw new NullPointerException("task not allow nullable");
         }
-        boolean containContext = contextMap.containsKey(task);
-        if(containContext) {
-            return contextMap.get(task);
+        boolean bounded = capacity > 0 && !(task instanceof IDLETask);
+        if(bounded && !acquireSlot(tag, blocking)) {
+            if(metrics != null) {
+                metrics.onRejected();
+            }
+            return null;
+        }
+        // 占用名额的任务在开始执行或被取消时释放名额，容量限制与指标统计均依赖于此
+        boolean tracked = !(task instanceof IDLETask) && (capacity > 0 || metrics != null);
+        long taskId = submitTaskId.getAndIncrement();
+        DispatchContext context = new DispatchContext(taskId, this);
+        if(bundle != null) {
+            // 提交后参数视为只读，任务线程读取时无需加锁
+            bundle.seal();
         }
-        DispatchContext context = new DispatchContext(submitTaskId, this);
         context.setBundle(bundle);
-        contextMap.put(task, context);
-        TaskItem item = obtain(delay, task, submitTaskId);
-        synchronized(taskQueueLock) {
-            if (status == Status.DESTROY) {
-                recycle(item); // 回收任务项
-                throw new DispatcherQueueHasDestroyedException(name);
+        if(slowTaskNanos > 0) {
+            context.submitSite = new DispatchWatchdog.SubmitSite();
+        }
+        if(priority != null) {
+            context.setPriority(priority);
+        }
+        if(tracked) {
+            context.occupySlot();
+            if(pendingOrder != null) {
+                recordPendingOrder(context);
             }
-            if(task instanceof IDLETask) {
-                idleQueue.offer(item);
+            if(metrics != null) {
+                context.scheduledNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+                metrics.onSubmitted();
             }
-            else {
-                queue = taskQueue;
-                taskQueue.offer(item);
+        }
+        if(tag != null) {
+            context.setTag(tag);
+            tagMap.computeIfAbsent(tag, (key) -> ConcurrentHashMap.newKeySet()).add(context);
+        }
+        if(stealingPool != null && delay <= 0 && !(task instanceof IDLETask)) {
+            // 多工作线程模式下立即执行的任务不经过分发线程，直接交给工作线程
+            executeStealing(context, task, null);
+            return context;
+        }
+        TaskItem item = obtain(delay, task, context);
+        context.item = item;
+        intake.offer(item);
+        if(!(task instanceof IDLETask)) {
+            Status current = status;
+            if(current != Status.BUSY && current != Status.DESTROY) {
+                transitStatus(Status.BUSY);
             }
-            submitTaskId++;
-            taskQueueLock.notifyAll();
         }
-        createThreadIfNeed();
+        signalWorker();
+        return context;
+    }
+
+    public <T> DispatchFuture<T> submit(Callable<T> callable) {
+        return submit(0, callable);
+    }
+
+    /**
+     * 提交有返回值的任务
+     * 不会阻塞调用线程，可通过{@link DispatchFuture#thenOn(DispatchQueue, java.util.function.Function)}在其他队列上继续处理结果
+     *
+     * @param callable 任务，抛出的异常会使结果以失败结束
+     * @return 任务的结果
+     */
+    public <T> DispatchFuture<T> submit(long delay, Callable<T> callable) throws DispatcherQueueHasDestroyedException, DispatcherQueueIsFullException {
+        if(callable == null) {
+            throw new NullPointerException("callable not allow nullable");
+        }
+        DispatchFuture<T> future = new DispatchFuture<>();
+        future.bind(async(delay, (context) -> future.run(callable)));
+        return future;
+    }
+
+    public DispatchFuture<Void> parallelFor(int from, int to, IntConsumer body) {
+        return parallelFor(from, to, 0, body);
+    }
+
+    /**
+     * 将区间[from, to)切分为若干块并发执行，每块作为一个任务提交到当前队列
+     * 适合多工作线程队列；串行队列上所有块按顺序执行
+     *
+     * @param chunk 每块的大小，小于等于0时根据数据量与队列的并发度自动计算
+     * @return 所有块执行完毕后完成；任一块抛出异常时以该异常失败，其余块尽快结束
+     */
+    public DispatchFuture<Void> parallelFor(int from, int to, int chunk, IntConsumer body) throws DispatcherQueueHasDestroyedException {
+        return ParallelLoop.forRange(this, from, to, chunk, body);
+    }
+
+    public <T, R> DispatchFuture<List<R>> parallelMap(List<T> list, Function<? super T, ? extends R> fn) {
+        return parallelMap(list, 0, fn);
+    }
+
+    /**
+     * 并发转换列表中的每个元素，结果保持原有顺序
+     *
+     * @param chunk 每块的大小，小于等于0时自动计算
+     * @return 不可修改的结果列表
+     */
+    public <T, R> DispatchFuture<List<R>> parallelMap(List<T> list, int chunk, Function<? super T, ? extends R> fn) throws DispatcherQueueHasDestroyedException {
+        return ParallelLoop.map(this, list, chunk, fn);
+    }
+
+    /**
+     * 队列可同时执行的任务数量
+     */
+    int parallelism() {
+        if(stealingPool != null) {
+            return stealingPool.size();
+        }
+        if(!isCoroutine) {
+            return 1;
+        }
+        if(virtualExecutor != null) {
+            return Math.min(virtualExecutor.getMaxConcurrency(), CPU_CORE);
+        }
+        return poolMaxSize;
+    }
+
+    /**
+     * 以固定频率重复执行任务，第n次计划执行的时间为 initialDelay + n * period，不会因执行耗时而累积偏差
+     * 上一次执行尚未结束时不会开始下一次；错过的执行时间点会被跳过，不会集中补执行
+     *
+     * @param initialDelay 首次执行的延时（毫秒）
+     * @param period 执行周期（毫秒）
+     * @return 任务上下文，取消后不再执行
+     */
+    public DispatchContext scheduleAtFixedRate(long initialDelay, long period, Task task) throws DispatcherQueueHasDestroyedException {
+        if(period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return schedulePeriodic(initialDelay, TimeUnit.MILLISECONDS.toNanos(period), task);
+    }
+
+    /**
+     * 以固定间隔重复执行任务，每次执行结束后等待delay再开始下一次
+     *
+     * @param initialDelay 首次执行的延时（毫秒）
+     * @param delay 两次执行之间的间隔（毫秒）
+     * @return 任务上下文，取消后不再执行
+     */
+    public DispatchContext scheduleWithFixedDelay(long initialDelay, long delay, Task task) throws DispatcherQueueHasDestroyedException {
+        if(delay <= 0) {
+            throw new IllegalArgumentException("delay must be positive");
+        }
+        return schedulePeriodic(initialDelay, -TimeUnit.MILLISECONDS.toNanos(delay), task);
+    }
+
+    private DispatchContext schedulePeriodic(long initialDelay, long periodNanos, Task task) {
+        if(status == Status.DESTROY) {
+            throw new DispatcherQueueHasDestroyedException(name);
+        }
+        if(task == null || task instanceof IDLETask) {
+            throw new IllegalArgumentException("task must be a non-null normal task");
+        }
+        DispatchContext context = new DispatchContext(submitTaskId.getAndIncrement(), this);
+        // 周期任务的任务项在整个生命周期内复用，不归还到复用池
+        TaskItem item = new TaskItem(initialDelay, task, context);
+        item.periodNanos = periodNanos;
+        item.periodicRunner = () -> runPeriodic(item);
+        context.item = item;
+        // 尚未到期的周期任务不视为待执行的任务，不切换至BUSY
+        intake.offer(item);
+        signalWorker();
         return context;
     }
 
+    private void runPeriodic(TaskItem item) {
+        DispatchContext context = item.getContext();
+        try {
+            // 每次执行与普通任务一样经过慢任务检测，开启指标时计为一个从计划时间开始等待的任务
+            boolean measured = metrics != null;
+            if(measured) {
+                context.scheduledNanos = item.runNanos;
+                metrics.onSubmitted();
+            }
+            runTask(context, item.getTask(), false, measured);
+        }
+        catch(RuntimeException e) { // 单次执行异常不影响后续执行
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+        finally {
+            reschedule(item);
+        }
+    }
+
+    private void reschedule(TaskItem item) {
+        DispatchContext context = item.getContext();
+        if(context.isCancel() || status == Status.DESTROY) {
+            context.detach();
+            return;
+        }
+        long now = System.nanoTime();
+        long period = item.periodNanos;
+        if(period > 0) { // 固定频率：沿原有的时间点推进，跳过已错过的时间点
+            long next = item.runNanos + period;
+            if(next - now <= 0) {
+                next += ((now - next) / period + 1) * period;
+            }
+            item.runNanos = next;
+        }
+        else {
+            item.runNanos = now - period;
+        }
+        context.item = item;
+        if(Thread.currentThread() == thread) { // 在分发线程上执行完毕，直接放回定时器
+            addTimed(item);
+            return;
+        }
+        intake.offer(item);
+        signalWorker();
+    }
+
+    /**
+     * 按键合并提交：同一个键下已提交但尚未执行的任务会被新任务替换，只执行最新的一次
+     *
+     * @param key 合并的键
+     */
+    public void coalesce(Object key, Task task) {
+        if(key == null || task == null) {
+            throw new NullPointerException("key and task not allow nullable");
+        }
+        keyedScheduler().coalesce(key, Priority.DEFAULT, task);
+    }
+
+    /**
+     * 以指定优先级按键合并提交，优先级以首次进入队列时为准
+     *
+     * @param key 合并的键
+     * @param priority 优先级，为null时按{@link Priority#DEFAULT}处理
+     */
+    public void coalesceWithPriority(Object key, Priority priority, Task task) {
+        if(key == null || task == null) {
+            throw new NullPointerException("key and task not allow nullable");
+        }
+        keyedScheduler().coalesce(key, priority, task);
+    }
+
+    /**
+     * 防抖：同一个键在窗口内没有新的提交时才执行，执行的是最后一次提交的任务
+     *
+     * @param key 合并的键
+     * @param window 静默窗口（毫秒）
+     */
+    public void debounce(Object key, long window, Task task) {
+        if(key == null || task == null) {
+            throw new NullPointerException("key and task not allow nullable");
+        }
+        keyedScheduler().debounce(key, window, task);
+    }
+
+    /**
+     * 节流：同一个键每个窗口内至多执行一次
+     * 窗口外的首次提交立即执行，窗口内的提交合并为窗口结束时执行的一次，执行的是最后一次提交的任务
+     *
+     * @param key 合并的键
+     * @param window 窗口（毫秒）
+     */
+    public void throttle(Object key, long window, Task task) {
+        if(key == null || task == null) {
+            throw new NullPointerException("key and task not allow nullable");
+        }
+        keyedScheduler().throttle(key, window, task);
+    }
+
+    private KeyedScheduler keyedScheduler() {
+        KeyedScheduler scheduler = keyedScheduler;
+        if(scheduler != null) {
+            return scheduler;
+        }
+        synchronized(keyedSchedulerLock) {
+            if(keyedScheduler == null) {
+                keyedScheduler = new KeyedScheduler(this);
+            }
+            return keyedScheduler;
+        }
+    }
+
+    /**
+     * 取消指定标签下所有尚未结束的任务
+     *
+     * @param tag 任务标签
+     * @return 被取消的任务数量
+     */
+    public int cancelAll(String tag) {
+        if(tag == null) {
+            return 0;
+        }
+        Set<DispatchContext> contexts = tagMap.remove(tag);
+        if(contexts == null) {
+            return 0;
+        }
+        int count = 0;
+        for(DispatchContext context : contexts) {
+            if(!context.isCancel()) {
+                context.cancel();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按溢出策略为新任务申请名额
+     *
+     * @param blocking 为false时BLOCK策略按FAIL_FAST处理
+     * @return 是否获得名额
+     */
+    private boolean acquireSlot(String tag, boolean blocking) {
+        while(true) {
+            int current = pendingCount.get();
+            if(current < capacity) {
+                if(pendingCount.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            switch(overflowPolicy) {
+                case BLOCK:
+                    if(isDispatchThread()) { // 在队列自身的线程上阻塞会导致死锁，直接超额放行
+                        pendingCount.incrementAndGet();
+                        return true;
+                    }
+                    if(!blocking) {
+                        return false;
+                    }
+                    return awaitSlot();
+                case DROP_OLDEST:
+                    DispatchContext oldest;
+                    while((oldest = pendingOrder.poll()) != null && !oldest.isOccupyingSlot());
+                    if(oldest == null) {
+                        pendingCount.incrementAndGet();
+                        return true;
+                    }
+                    oldest.cancel(); // 取消时同步释放名额，重新尝试申请
+                    break;
+                case COALESCE:
+                    if(tag == null || cancelAll(tag) == 0) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private boolean awaitSlot() {
+        blockedSubmitters.incrementAndGet();
+        try {
+            synchronized(capacityLock) {
+                while(true) {
+                    if(status == Status.DESTROY) {
+                        throw new DispatcherQueueHasDestroyedException(name);
+                    }
+                    int current = pendingCount.get();
+                    if(current < capacity && pendingCount.compareAndSet(current, current + 1)) {
+                        return true;
+                    }
+                    try {
+                        capacityLock.wait();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        }
+        finally {
+            blockedSubmitters.decrementAndGet();
+        }
+    }
+
+    /**
+     * 释放任务占用的名额
+     *
+     * @return 任务此前占用名额时返回true，每个任务只会返回一次
+     */
+    private boolean releaseSlot(DispatchContext context) {
+        if(context == null || !context.releaseSlot()) {
+            return false;
+        }
+        if(capacity > 0) {
+            pendingCount.decrementAndGet();
+            if(blockedSubmitters.get() > 0) {
+                synchronized(capacityLock) {
+                    capacityLock.notifyAll();
+                }
+            }
+        }
+        return true;
+    }
+
+    private void recordPendingOrder(DispatchContext context) {
+        // 已开始执行或已取消的任务不再需要记录，定期整体清理一次，避免被长时间等待的任务挡住
+        DispatchContext head;
+        while((head = pendingOrder.peek()) != null && !head.isOccupyingSlot()) {
+            pendingOrder.remove(head);
+        }
+        if(pendingOrderSweep.incrementAndGet() % capacity == 0) {
+            pendingOrder.removeIf((each) -> !each.isOccupyingSlot());
+        }
+        pendingOrder.offer(context);
+    }
+
+    private boolean isDispatchThread() {
+        Thread current = Thread.currentThread();
+        return current == thread || (stealingPool != null && stealingPool.isWorkerThread(current));
+    }
+
     public void addIdle(IDLETask idle) {
         async(0, idle);
     }
@@ -245,11 +799,11 @@ public class DispatchQueue {
     }
 
     public void awaitShutdown() {
-        shutdown(true, true);
+        shutdown(true);
     }
 
     public void shutdown() {
-        shutdown(false, false);
+        shutdown(false);
     }
 
     public Status getStatus() {
@@ -269,6 +823,18 @@ public class DispatchQueue {
         }
     }
 
+    /**
+     * 仅在状态真正发生变化时更新并通知观察者，已销毁的队列不再变更状态
+     */
+    private void transitStatus(Status status) {
+        synchronized(statusLock) {
+            if(this.status == status || this.status == Status.DESTROY) {
+                return;
+            }
+            setStatus(status);
+        }
+    }
+
     private void setStatus(Status status) {
         synchronized(statusLock) {
             this.status = status;
@@ -284,201 +850,623 @@ public class DispatchQueue {
         if(task == null) {
             return;
         }
+        if(stealingPool != null && !(task instanceof IDLETask)) {
+            executeStealing(context, task, null);
+            return;
+        }
         if(!isCoroutine || task instanceof IDLETask) {
-            task.run(context);
             if(task instanceof IDLETask && ((IDLETask)task).reuse()) {
-                TaskItem item = obtain(0, task, submitTaskId);
-                synchronized(taskQueueLock) {
-                    taskQueue.offer(item);
+                runTask(context, task, false);
+                if(context.isCancel()) {
+                    return;
                 }
+                TaskItem item = obtain(0, task, context);
+                context.item = item;
+                intake.offer(item);
                 return;
             }
-            contextMap.remove(task);
+            runTask(context, task);
             return;
         }
-        ThreadPoolExecutor pool = getOrCreatePool();
-        synchronized(REF_POOL_LOCK) {
-            if(pool == null || pool.isShutdown()) { // 意外情况，降级处理
-                task.run(context);
-                return;
-            }
+        if(virtualExecutor != null) {
             try {
-                pool.submit(() -> {
-                    task.run(context);
-                });
+                virtualExecutor.execute(context.getPriority(), new OffloadedTask(context, task, null, false));
             }
             catch(RejectedExecutionException e) { // 降级处理 直接执行
-                task.run(context);
+                runTask(context, task);
             }
+            return;
+        }
+        ThreadPoolExecutor pool = getOrCreatePool();
+        if(pool == null || pool.isShutdown()) { // 队列已销毁，降级处理
+            runTask(context, task);
+            return;
+        }
+        try {
+            pool.execute(() -> runTask(context, task));
+        }
+        catch(RejectedExecutionException e) { // 降级处理 直接执行
+            runTask(context, task);
         }
     }
 
-    private void shutdown(boolean await, boolean clear) {
-        if(status.rawValue < Status.DESTROY.rawValue) {
-            synchronized(statusLock) {
-                setStatus(Status.DESTROY);
-            }
-            synchronized(taskQueueLock) {
-                if(clear) {
-                    for (TaskItem each : taskQueue) {
-                        recycle(each);
-                    }
-                    taskQueue.clear();
-                }
-                taskQueueLock.notifyAll();
-            }
-            if(await) {
-                synchronized(threadLock) {
-                    try {
-                        thread.join();
-                    }
-                    catch(InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
-            if(isCoroutine) {
-                synchronized(REF_POOL_LOCK) {
-                    coroutinePoolRefCount--;
-                }
-                shutdownPoolIfNeed(await);
-            }
+    /**
+     * 任务被取消时调用，若任务仍在队列中等待则通知分发线程将其移除
+     */
+    void onCancelled(DispatchContext context) {
+        untag(context);
+        if(releaseSlot(context) && metrics != null) {
+            metrics.onCancelled();
+        }
+        if(context.item == null || status == Status.DESTROY) {
+            return;
         }
+        cancelIntake.offer(context);
+        signalWorker();
     }
 
-    private TaskItem obtain(long delay, Task task, long id) {
-        TaskItem item;
-        synchronized(itemPoolLock) {
-            item = itemPool.poll();
+    private void executeStealing(DispatchContext context, Task task, Runnable periodicRunner) {
+        stealingInFlight.incrementAndGet();
+        Status current = status;
+        if(current != Status.BUSY && current != Status.DESTROY) {
+            transitStatus(Status.BUSY);
         }
-        if(item == null) { // 池子内无元素说明全部正在使用
-            item = new TaskItem(delay, task, id);
+        try {
+            stealingPool.execute(new OffloadedTask(context, task, periodicRunner, true));
         }
-        else {
-            item.setDelay(delay);
-            item.setTask(task);
-            item.setId(id);
+        catch(RuntimeException e) {
+            onStealingFinished();
+            throw e;
         }
-        return item;
     }
 
-    private void recycle(TaskItem task) {
-        task.setTask(null);
-        task.runMills = 0;
+    private void onStealingFinished() {
+        if(stealingInFlight.decrementAndGet() == 0 && status != Status.DESTROY) {
+            stealingDrained.set(true);
+            signalWorker();
+        }
+    }
+
+    private void runTask(DispatchContext context, Task task) {
+        runTask(context, task, true);
+    }
+
+    /**
+     * @param finish 任务是否就此结束，可复用的IDLE任务执行后仍保留标签与父任务的关联
+     */
+    private void runTask(DispatchContext context, Task task, boolean finish) {
+        runTask(context, task, finish, releaseSlot(context) && metrics != null);
+    }
+
+    /**
+     * @param measured 是否计入运行指标
+     */
+    private void runTask(DispatchContext context, Task task, boolean finish, boolean measured) {
+        DispatchWatchdog.Watch watch = slowTaskNanos > 0 ? DispatchWatchdog.begin(name, slowTaskNanos, context) : null;
+        try {
+            if(measured) {
+                runMeasured(context, task);
+            }
+            else if(!context.isCancel()) {
+                task.run(context);
+            }
+        }
+        finally {
+            if(watch != null) {
+                DispatchWatchdog.end(watch);
+            }
+            if(finish) {
+                untag(context);
+                context.detach();
+            }
+        }
+    }
+
+    private void runMeasured(DispatchContext context, Task task) {
+        if(context.isCancel()) {
+            metrics.onCancelled();
+            return;
+        }
+        long start = System.nanoTime();
+        metrics.onStarted(start - context.scheduledNanos);
+        boolean success = false;
+        try {
+            task.run(context);
+            success = true;
+        }
+        finally {
+            metrics.onFinished(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * 当前的运行指标
+     *
+     * @return 未开启指标时返回null
+     */
+    @Nullable
+    public DispatchMetrics.Snapshot snapshotMetrics() {
+        return metrics == null ? null : metrics.snapshot(this);
+    }
+
+    DispatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void untag(DispatchContext context) {
+        String tag = context.getTag();
+        if(tag == null) {
+            return;
+        }
+        Set<DispatchContext> contexts = tagMap.get(tag);
+        if(contexts != null) {
+            contexts.remove(context);
+            if(contexts.isEmpty()) {
+                tagMap.remove(tag, contexts);
+            }
+        }
+    }
+
+    private void shutdown(boolean await) {
+        if(status.rawValue < Status.DESTROY.rawValue) {
+            synchronized(statusLock) {
+                setStatus(Status.DESTROY);
+            }
+            // 唤醒分发线程，由其自行丢弃剩余任务并退出
+            Thread worker;
+            synchronized(threadLock) {
+                worker = thread;
+            }
+            if(worker != null) {
+                LockSupport.unpark(worker);
+            }
+            if(metricsReport != null) {
+                metricsReport.cancel(false);
+            }
+            synchronized(capacityLock) { // 唤醒因队列已满而阻塞的提交者
+                capacityLock.notifyAll();
+            }
+            if(await) {
+                if(worker != null && worker != Thread.currentThread()) {
+                    try {
+                        worker.join();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            if(stealingPool != null) {
+                // 尚未被工作线程取走的任务直接取消，释放其名额
+                discardOffloaded(stealingPool.shutdown(await));
+            }
+            if(virtualExecutor != null) {
+                discardOffloaded(virtualExecutor.shutdown(await));
+            }
+            else if(isCoroutine) {
+                shutdownPool(await);
+            }
+        }
+    }
+
+    private static void discardOffloaded(List<Runnable> remaining) {
+        for(Runnable runnable : remaining) {
+            if(runnable instanceof OffloadedTask offloaded) {
+                offloaded.discard();
+            }
+        }
+    }
+
+    private TaskItem obtain(long delay, Task task, DispatchContext context) {
+        TaskItem item = itemRecycler.poll();
+        if(item == null) { // 池子内无元素说明全部正在使用
+            item = new TaskItem(delay, task, context);
+        }
+        else {
+            item.setDelay(delay);
+            item.setTask(task);
+            item.setContext(context);
+        }
+        return item;
+    }
+
+    private void recycle(TaskItem task) {
+        if(task.periodNanos != 0) { // 周期任务的任务项在整个生命周期内复用，执行中的任务项随时可能被重新放回定时器
+            return;
+        }
+        task.setTask(null);
+        task.setContext(null);
+        task.runNanos = 0;
         task.delay = 0;
         task.id = Long.MAX_VALUE;
-        synchronized(itemPoolLock) {
-            if(itemPool.size() < ITEM_POOL_MAX) {
-                itemPool.offer(task);
+        task.periodNanos = 0;
+        task.periodicRunner = null;
+        itemRecycler.offer(task);
+    }
+
+    /**
+     * 通知分发线程有新任务：线程运行中则无需任何操作，挂起则唤醒，已退出则重新创建
+     */
+    private void signalWorker() {
+        while(true) {
+            int state = workerState.get();
+            if(state == WORKER_RUNNING) {
+                return;
+            }
+            if(state == WORKER_PARKED) {
+                if(workerState.compareAndSet(WORKER_PARKED, WORKER_RUNNING)) {
+                    Thread worker;
+                    synchronized(threadLock) {
+                        worker = thread;
+                    }
+                    LockSupport.unpark(worker);
+                    return;
+                }
+                continue;
+            }
+            if(workerState.compareAndSet(WORKER_DEAD, WORKER_RUNNING)) {
+                Thread worker = new T(name, new DispatcherQueueWeakRef(this), spinNanos);
+                worker.setDaemon(false);
+                synchronized(threadLock) {
+                    thread = worker;
+                }
+                worker.start();
+                return;
             }
         }
     }
 
-    private void createThreadIfNeed() {
-        synchronized(threadLock) {
-            if(thread == null) {
-                thread = new T(name, new DispatcherQueueWeakRef(this));
-                thread.setDaemon(false);
-                thread.start();
+    /**
+     * 分发线程执行一次调度
+     *
+     * @return 0表示继续调度，正数表示需要等待的纳秒数，{@link #WORKER_EXIT}表示线程应当退出
+     */
+    private long dispatchNext() {
+        if(status == Status.DESTROY) {
+            discardPending();
+            workerState.set(WORKER_DEAD);
+            return WORKER_EXIT;
+        }
+        // 工作线程上的任务已全部结束，需重新切换至idle
+        boolean drained = stealingDrained.getAndSet(false);
+        if(drained) {
+            isIdling = false;
+        }
+        // 休眠期间没有收到任何任务时，存活时间从首次休眠开始计算
+        boolean wasDormant = drainIntake() == 0 && isDormant && !drained;
+        isDormant = false;
+        drainCancelled();
+        long now = System.nanoTime();
+        TaskItem item;
+        while((item = timer.pollExpired(now)) != null) {
+            if(item.periodNanos != 0) {
+                timedPeriodic--;
             }
+            offerReady(item);
+        }
+        if(!readyLanes.isEmpty()) { // 一次调度连续执行至多batchSize个已就绪任务
+            for(int i = 0; i < batchSize && (item = readyLanes.poll()) != null; i++) {
+                runItem(item);
+            }
+            return 0;
+        }
+        long delayNanos = timer.nextDelay(now);
+        if(delayNanos >= 0 && timer.size() > timedPeriodic) { // 还有未到期的普通延时任务
+            return Math.max(delayNanos, 1);
         }
-        setStatus(Status.BUSY);
-        synchronized(taskQueueLock) {
+        if(stealingInFlight.get() > 0) { // 工作线程上仍有任务在执行，全部结束时会唤醒分发线程
+            if(isIdling) {
+                isIdling = false;
+                transitStatus(Status.BUSY);
+            }
+            return STEALING_WAIT_NANOS;
+        }
+        if(!isIdling) { // 普通任务已全部执行，切换至idle执行
+            isIdling = true;
             lastIDLETimestamp = TimeUtil.now();
-            queue = taskQueue;
+            transitStatus(Status.IDLE);
+            if(stealingInFlight.get() > 0) { // 与多工作线程模式下的提交竞争，重新确认
+                return 0;
+            }
+        }
+        item = idleQueue.peek();
+        long idleNanos = -1;
+        if(item != null) {
+            long current = TimeUtil.now();
+            long itemRunMills = item.delay + lastIDLETimestamp;
+            if(itemRunMills <= current) {
+                idleQueue.poll();
+                runItem(item);
+                return 0;
+            }
+            idleNanos = TimeUnit.MILLISECONDS.toNanos(itemRunMills - current);
+        }
+        if(delayNanos >= 0) { // 只剩未到期的周期任务，保持空闲直至其到期，分发线程不能休眠退出
+            if(status == Status.DORMANT) {
+                transitStatus(Status.IDLE);
+            }
+            return Math.max(idleNanos >= 0 ? Math.min(idleNanos, delayNanos) : delayNanos, 1);
+        }
+        if(idleNanos >= 0) {
+            return idleNanos;
+        }
+        // 没有任何任务，进入休眠；存活时间内有新任务可直接唤醒
+        isDormant = true;
+        if(!wasDormant) {
+            dormantSinceNanos = now;
+        }
+        if(status != Status.DORMANT) {
+            transitStatus(Status.DORMANT);
+        }
+        long remainNanos = keepAliveNanos - (now - dormantSinceNanos);
+        if(remainNanos > 0) {
+            return remainNanos;
+        }
+        // 存活时间已到，结束当前线程；退出前需确认没有与之竞争的提交
+        isDormant = false;
+        if(isCoroutine && virtualExecutor == null) { // 线程池随分发线程一同退出，正在执行的任务会执行完毕
+            shutdownPool(false);
+        }
+        workerState.set(WORKER_DEAD);
+        if(!intake.isEmpty() && workerState.compareAndSet(WORKER_DEAD, WORKER_RUNNING)) {
+            return 0;
+        }
+        return WORKER_EXIT;
+    }
+
+    /**
+     * @return 取出的任务数量
+     */
+    private int drainIntake() {
+        TaskItem item;
+        int count = 0;
+        boolean hasNormalTask = false;
+        while((item = intake.poll()) != null) {
+            count++;
+            if(item.getTask() instanceof IDLETask) {
+                idleQueue.offer(item);
+            }
+            else {
+                if(item.delay <= 0 && item.periodNanos == 0) {
+                    offerReady(item);
+                }
+                else {
+                    addTimed(item);
+                }
+                // 周期任务的首次提交与每次重新放回都不打断空闲状态
+                hasNormalTask |= item.periodNanos == 0;
+            }
+        }
+        if(hasNormalTask && isIdling) {
+            isIdling = false;
+            transitStatus(Status.BUSY);
+        }
+        return count;
+    }
+
+    private void addTimed(TaskItem item) {
+        if(item.periodNanos != 0) {
+            timedPeriodic++;
+        }
+        timer.add(item);
+    }
+
+    private void offerReady(TaskItem item) {
+        DispatchContext context = item.getContext();
+        readyLanes.offer(context == null ? Priority.DEFAULT : context.getPriority(), item);
+    }
+
+    private void drainCancelled() {
+        DispatchContext context;
+        while((context = cancelIntake.poll()) != null) {
+            TaskItem item = context.item;
+            // 任务项可能已被执行并复用，需确认仍属于该任务
+            if(item == null || item.getContext() != context) {
+                continue;
+            }
+            // TaskItem按值比较，复用后的任务项可能与其他任务相等，需按引用移除
+            boolean removed = item.getTask() instanceof IDLETask ? idleQueue.removeIf((each) -> each == item) : timer.remove(item);
+            if(removed) {
+                if(item.periodNanos != 0) {
+                    timedPeriodic--;
+                }
+                context.item = null;
+                recycle(item);
+            }
+        }
+    }
+
+    private void runItem(TaskItem item) {
+        if(item.periodNanos != 0) {
+            dispatchPeriodic(item);
+            return;
+        }
+        Task task = item.getTask();
+        DispatchContext context = item.getContext();
+        recycle(item);
+        if(context == null || context.isCancel()) {
+            return;
+        }
+        context.item = null;
+        try {
+            handleTask(context, task);
+        }
+        catch(RuntimeException e) { // 单个任务异常不应导致分发线程退出
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+    }
+
+    private void dispatchPeriodic(TaskItem item) {
+        DispatchContext context = item.getContext();
+        if(context == null || context.isCancel()) {
+            return;
+        }
+        context.item = null;
+        Runnable runner = item.periodicRunner;
+        try {
+            if(stealingPool != null) {
+                executeStealing(context, null, runner);
+            }
+            else if(!isCoroutine) {
+                runner.run();
+            }
+            else if(virtualExecutor != null) {
+                virtualExecutor.execute(context.getPriority(), new OffloadedTask(context, null, runner, false));
+            }
+            else {
+                ThreadPoolExecutor pool = getOrCreatePool();
+                if(pool == null) {
+                    runner.run();
+                }
+                else {
+                    pool.execute(runner);
+                }
+            }
+        }
+        catch(RejectedExecutionException e) { // 降级处理 直接执行
+            runner.run();
+        }
+    }
+
+    private void discardPending() {
+        TaskItem item;
+        while((item = intake.poll()) != null) {
+            discard(item);
+        }
+        readyLanes.clear(this::discard);
+        timer.clear(this::discard);
+        timedPeriodic = 0;
+        for(TaskItem each : idleQueue) {
+            discard(each);
+        }
+        idleQueue.clear();
+        while(cancelIntake.poll() != null);
+        tagMap.clear();
+    }
+
+    private void discard(TaskItem item) {
+        DispatchContext context = item.getContext();
+        if(releaseSlot(context) && metrics != null) {
+            metrics.onCancelled();
+        }
+        recycle(item);
+        if(context == null) {
+            return;
+        }
+        // 与OffloadedTask一致，取消上下文使等待该任务的结果与任务组随之结束
+        context.item = null;
+        try {
+            context.cancel();
+        }
+        catch(RuntimeException e) { // 取消回调的异常不应中断剩余任务的丢弃
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+    }
+
+    /**
+     * 交给工作线程或虚拟线程执行的任务，队列销毁时尚未开始执行的任务会被取消
+     */
+    private final class OffloadedTask implements Runnable {
+        private final DispatchContext context;
+        private final Task task;
+        private final Runnable periodicRunner;
+        // 是否计入多工作线程模式下的在途任务
+        private final boolean stealing;
+
+        private OffloadedTask(DispatchContext context, Task task, Runnable periodicRunner, boolean stealing) {
+            this.context = context;
+            this.task = task;
+            this.periodicRunner = periodicRunner;
+            this.stealing = stealing;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if(periodicRunner != null) {
+                    periodicRunner.run();
+                }
+                else {
+                    runTask(context, task);
+                }
+            }
+            finally {
+                if(stealing) {
+                    onStealingFinished();
+                }
+            }
+        }
+
+        private void discard() {
+            context.cancel();
+            if(stealing) {
+                onStealingFinished();
+            }
         }
     }
 
     private static class T extends Thread {
         private final DispatcherQueueWeakRef ref;
-        public T(String name, DispatcherQueueWeakRef ref) {
+        private final long spinNanos;
+        public T(String name, DispatcherQueueWeakRef ref, long spinNanos) {
             super(name + "#Worker");
             this.ref = ref;
+            this.spinNanos = spinNanos;
         }
 
         @Override
         public void run() {
             while(true) {
                 DispatchQueue queue = this.ref.get();
-                if(queue == null || queue.status == Status.DESTROY) {
+                if(queue == null) {
                     return;
                 }
-                queue = null;
-                Task needExecute;
+                long waitNanos;
                 try {
-                    needExecute = fetchTask(this.ref);
-                    queue = this.ref.get();
-                    if(queue != null && needExecute != null) {
-                        DispatchContext context = queue.contextMap.get(needExecute);
-                        if(!context.isCancel()) {
-                            queue.handleTask(context, needExecute);
-                        }
-                    }
+                    waitNanos = queue.dispatchNext();
                 }
-                catch (Exception e) {
-                    if(e instanceof InterruptedException) {
-                        Thread.currentThread().interrupt();
-                    }
-                    queue = this.ref.get();
-                    if(queue != null) {
-                        synchronized(queue.threadLock) {
-                            queue.thread = null;
-                        }
-                        synchronized(queue.statusLock) {
-                            queue.setStatus(Status.DORMANT);
-                        }
-                        if(queue == io) {
-                            shutdownPoolIfNeed(false);
-                        }
-                    }
+                catch(Throwable e) { // 任务抛出Error时当前线程随之结束，由新的分发线程接管剩余任务
+                    queue.workerState.set(WORKER_DEAD);
+                    queue.signalWorker();
+                    throw e;
+                }
+                if(waitNanos == WORKER_EXIT) {
                     return;
                 }
+                if(waitNanos > 0) {
+                    AtomicInteger state = queue.workerState;
+                    MpscQueue<TaskItem> intake = queue.intake;
+                    MpscQueue<DispatchContext> cancelIntake = queue.cancelIntake;
+                    AtomicBoolean drained = queue.stealingDrained;
+                    queue = null; // 等待期间不持有队列的强引用
+                    park(state, intake, cancelIntake, drained, waitNanos, spinNanos);
+                }
             }
         }
 
-        private Task fetchTask(DispatcherQueueWeakRef ref) throws NeedDestroyDispatcherQueueException, InterruptedException {
-            DispatchQueue q = ref.get();
-            if(q == null || q.status == Status.DESTROY) {
-                return null;
-            }
-            final Object queueLock = q.taskQueueLock;
-            synchronized(queueLock) {
-                if(q.queue.isEmpty() && q.queue != q.idleQueue) { // 尝试切换至idle执行
-                    synchronized(q.statusLock) {
-                        q.setStatus(Status.IDLE);
-                    }
-                    q.lastIDLETimestamp = TimeUtil.now();
-                    q.queue = q.idleQueue;
-                    if(q.queue.isEmpty()) { // 如果还是没有任务 应该结束掉当前线程
-                        throw new NeedDestroyDispatcherQueueException(q.name);
-                    }
-                }
-                TaskItem item = q.queue.poll();
-                if(item == null) {
-                    return null;
-                }
-                long current = System.currentTimeMillis();
-                long itemRunMills = item.task instanceof IDLETask ? item.delay + q.lastIDLETimestamp : item.getRunMills();
-                if(itemRunMills <= current) {
-                    Task needExecute = item.getTask();
-                    q.recycle(item);
-                    return needExecute;
-                }
-                else {
-                    q.queue.offer(item);
-                    long delayMillis = itemRunMills - current;
-                    while (delayMillis > 0 && q.status != Status.DESTROY) {
-                        q = null;
-                        queueLock.wait(delayMillis);
-                        q = ref.get();
-                        if(q == null || !q.taskQueue.isEmpty()) {
-                            return null;
-                        }
-                        delayMillis = itemRunMills - System.currentTimeMillis();
+        /**
+         * 先自旋等待一小段时间，仍无新任务再挂起；短暂空闲后到来的任务无需经过挂起与唤醒
+         */
+        private static void park(AtomicInteger state, MpscQueue<TaskItem> intake, MpscQueue<DispatchContext> cancelIntake,
+                                 AtomicBoolean drained, long waitNanos, long spinNanos) {
+            state.set(WORKER_PARKED);
+            long begin = System.nanoTime();
+            long spinDeadline = begin + Math.min(spinNanos, waitNanos);
+            // 挂起前持续确认，避免错过提交与取消
+            while(state.get() == WORKER_PARKED && intake.isEmpty() && cancelIntake.isEmpty() && !drained.get()) {
+                long now = System.nanoTime();
+                if(now - spinDeadline >= 0) {
+                    long remain = waitNanos - (now - begin);
+                    if(remain > 0) {
+                        LockSupport.parkNanos(remain);
                     }
-                    return null;
+                    break;
                 }
+                Thread.onSpinWait();
             }
+            state.compareAndSet(WORKER_PARKED, WORKER_RUNNING);
         }
     }
 
@@ -496,6 +1484,239 @@ public class DispatchQueue {
         }
     }
 
+    public enum TimerType {
+        /**
+         * 优先队列，插入与取出O(log n)，到期时间精确
+         */
+        HEAP,
+        /**
+         * 哈希时间轮，插入与取消O(1)，到期精度为1毫秒
+         */
+        WHEEL
+    }
+
+    public enum OverflowPolicy {
+        /**
+         * 阻塞提交者直到有空余名额；在队列自身的线程上提交时不阻塞
+         */
+        BLOCK,
+        /**
+         * 立即拒绝新任务
+         */
+        FAIL_FAST,
+        /**
+         * 取消最早提交且尚未执行的任务，为新任务腾出名额
+         */
+        DROP_OLDEST,
+        /**
+         * 取消与新任务标签相同且尚未执行的任务，新任务替代它们；没有相同标签的任务时拒绝
+         */
+        COALESCE
+    }
+
+    public enum Priority {
+        /**
+         * 对延迟敏感的任务，如请求处理
+         */
+        HIGH(8),
+        DEFAULT(4),
+        /**
+         * 批量、可延后的任务，如持久化与日志写入
+         */
+        BACKGROUND(1);
+
+        // 出队时被选中的相对权重
+        public final int weight;
+
+        Priority(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    public static class Builder {
+        private String mName = DEFAULT_DISPATCHER_NAME;
+        private boolean mCoroutine = false;
+        private int mWorkers = 1;
+        private TimerType mTimerType = TimerType.HEAP;
+        private int mVirtualConcurrency = 0;
+        private int mCapacity = 0;
+        private int mBatchSize = DEFAULT_BATCH_SIZE;
+        private int mRecyclerCapacity = DEFAULT_RECYCLER_CAPACITY;
+        private OverflowPolicy mOverflowPolicy = OverflowPolicy.BLOCK;
+        private int mPoolCoreSize = DEFAULT_POOL_CORE;
+        private int mPoolMaxSize = DEFAULT_POOL_MAX;
+        private long mKeepAliveNanos = DEFAULT_KEEP_ALIVE_NANOS;
+        private long mSpinNanos = DEFAULT_SPIN_NANOS;
+        private boolean mMetrics = false;
+        private long mMetricsPeriodNanos = 0;
+        private MetricsListener mMetricsListener;
+        private long mSlowTaskNanos = 0;
+
+        public Builder() {  }
+
+        public Builder name(String name) {
+            this.mName = name;
+            return this;
+        }
+
+        public Builder coroutine(boolean coroutine) {
+            this.mCoroutine = coroutine;
+            return this;
+        }
+
+        /**
+         * 工作线程数量
+         * 大于1时队列以任务窃取的方式在多个线程上并发执行任务，不再保证任务的执行顺序
+         *
+         * @param count 工作线程数量
+         */
+        public Builder workers(int count) {
+            this.mWorkers = Math.max(count, 1);
+            return this;
+        }
+
+        /**
+         * 串行执行，任务按提交顺序在单个线程上依次执行（默认）
+         */
+        public Builder serial() {
+            this.mWorkers = 1;
+            return this;
+        }
+
+        /**
+         * 延时任务的存储结构，大量延时任务（如超时、重试）时建议使用{@link TimerType#WHEEL}
+         */
+        public Builder timer(TimerType type) {
+            this.mTimerType = type == null ? TimerType.HEAP : type;
+            return this;
+        }
+
+        /**
+         * 协程队列的任务运行在虚拟线程上，适合大量阻塞的文件与网络操作
+         * 在synchronized块内阻塞的任务会占住虚拟线程的载体线程，这类任务应使用默认的线程池
+         *
+         * @param maxConcurrency 同时运行的任务上限，超出的任务排队等待
+         */
+        public Builder virtualThreads(int maxConcurrency) {
+            this.mVirtualConcurrency = Math.max(maxConcurrency, 1);
+            return this;
+        }
+
+        /**
+         * 限制等待执行的任务数量，IDLE任务不计入
+         *
+         * @param capacity 容量，小于等于0表示不限制
+         * @param policy 队列已满时的处理策略
+         */
+        public Builder capacity(int capacity, OverflowPolicy policy) {
+            this.mCapacity = Math.max(capacity, 0);
+            this.mOverflowPolicy = policy == null ? OverflowPolicy.BLOCK : policy;
+            return this;
+        }
+
+        /**
+         * 开启运行指标统计，通过{@link #snapshotMetrics()}读取；未开启时几乎没有额外开销
+         */
+        public Builder metrics(boolean enable) {
+            this.mMetrics = enable;
+            return this;
+        }
+
+        /**
+         * 开启运行指标统计，并按固定周期回调指标快照
+         * 回调运行在公共的后台线程上，不应执行耗时操作
+         */
+        public Builder metrics(long period, TimeUnit unit, MetricsListener listener) {
+            this.mMetrics = true;
+            this.mMetricsPeriodNanos = Math.max(unit.toNanos(period), 1);
+            this.mMetricsListener = listener;
+            return this;
+        }
+
+        /**
+         * 开启慢任务检测，执行时间超过预算的任务会通过Logger报告工作线程的堆栈与任务的提交位置
+         * 每次提交都会记录调用堆栈，有一定开销，建议仅在排查问题时开启
+         *
+         * @param budget 单个任务的执行时间预算，小于等于0表示不检测
+         */
+        public Builder watchdog(long budget, TimeUnit unit) {
+            this.mSlowTaskNanos = Math.max(unit.toNanos(budget), 0);
+            return this;
+        }
+
+        /**
+         * 分发线程空闲后的存活时间，默认为0
+         * 存活期间状态为{@link Status#DORMANT}，线程挂起等待；超时后线程退出，下次提交时重新创建。
+         * 线程均不是守护线程，存活期间会阻止程序退出。多工作线程模式下同样作用于工作线程，协程队列的线程池随分发线程一同退出
+         *
+         * @param time 存活时间，0表示空闲后立即退出
+         */
+        public Builder keepAlive(long time, TimeUnit unit) {
+            this.mKeepAliveNanos = Math.max(unit.toNanos(time), 0);
+            return this;
+        }
+
+        /**
+         * 分发线程挂起前的自旋时间，自旋期间到来的任务可在微秒级内被执行，代价是占用CPU
+         *
+         * @param time 自旋时间，0表示不自旋直接挂起
+         */
+        public Builder spin(long time, TimeUnit unit) {
+            this.mSpinNanos = Math.max(unit.toNanos(time), 0);
+            return this;
+        }
+
+        /**
+         * 协程队列独占线程池的大小，各队列的线程池相互独立，关闭一个队列不影响其他队列
+         *
+         * @param coreSize 核心线程数
+         * @param maxSize 最大线程数，不小于核心线程数
+         */
+        public Builder poolSize(int coreSize, int maxSize) {
+            this.mPoolCoreSize = Math.max(coreSize, 1);
+            this.mPoolMaxSize = Math.max(maxSize, mPoolCoreSize);
+            return this;
+        }
+
+        /**
+         * 分发线程每次调度连续执行的任务数量上限
+         * 批量越大，调度开销越小，但取消与新提交的任务被感知得越晚
+         *
+         * @param size 批量大小，1表示每次调度只执行一个任务
+         */
+        public Builder batchSize(int size) {
+            this.mBatchSize = Math.max(size, 1);
+            return this;
+        }
+
+        /**
+         * 任务项对象池的容量，执行完毕的任务项归还至池中供后续提交复用
+         *
+         * @param capacity 容量，向上取整为2的幂；0表示不复用任务项
+         */
+        public Builder recyclerCapacity(int capacity) {
+            this.mRecyclerCapacity = Math.max(capacity, 0);
+            return this;
+        }
+
+        public DispatchQueue build() {
+            if(mName == null) {
+                mName = DEFAULT_DISPATCHER_NAME;
+            }
+            if(mCoroutine && mWorkers > 1) {
+                throw new IllegalArgumentException("coroutine dispatchQueue can't specify workers. ");
+            }
+            if(!mCoroutine && mVirtualConcurrency > 0) {
+                throw new IllegalArgumentException("only coroutine dispatchQueue can run on virtual threads. ");
+            }
+            DispatchQueue queue = new DispatchQueue(this);
+            if(mMetricsListener != null) {
+                queue.metricsReport = DispatchMetrics.schedule(queue, mMetricsPeriodNanos, mMetricsListener);
+            }
+            return queue;
+        }
+    }
+
     public static class DispatcherQueueHasDestroyedException extends RuntimeException {
         private static final String MSG = " dispatcherQueue is destroyed. ";
         public DispatcherQueueHasDestroyedException(String queueName) {
@@ -503,35 +1724,50 @@ public class DispatchQueue {
         }
     }
 
+    public static class DispatcherQueueIsFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private static final String MSG = " dispatcherQueue is full. ";
+        public DispatcherQueueIsFullException(String queueName) {
+            super(queueName + MSG);
+        }
+    }
+
     protected static final class TaskItem implements Comparable<TaskItem> {
         private static final int NORMAL_TASK = 0;
         private static final int IDLE_TASK = 1;
-        private long runMills;
+        private long runNanos;
         private long delay;
         private Task task;
         private long id;
-
-        public TaskItem(long delay, Task task, long id) {
-            this.runMills = System.currentTimeMillis() + delay;
-            this.delay = delay;
+        // 任务的上下文随任务项一起流转，提交与分发均无需查表
+        private DispatchContext context;
+        // 周期任务的周期，正数为固定频率，负数为固定间隔，0表示非周期任务
+        long periodNanos = 0;
+        Runnable periodicRunner;
+
+        // 时间轮中的链表指针，由TimingWheel维护
+        TaskItem timerPrev;
+        TaskItem timerNext;
+        int timerSlot = -1;
+        // 在堆中的下标，由HeapTaskTimer维护
+        int heapIndex = -1;
+
+        public TaskItem(long delay, Task task, DispatchContext context) {
+            setDelay(delay);
             this.task = task;
-            this.id = id;
+            setContext(context);
         }
 
-        public long getRunMills() {
-            return runMills;
+        public long getRunNanos() {
+            return runNanos;
         }
 
         public Task getTask() {
             return task;
         }
 
-        public void setRunMills(long delay) {
-            this.runMills = delay + System.currentTimeMillis();
-        }
-
         public void setDelay(long delay) {
-            this.runMills = System.currentTimeMillis() + delay;
+            this.runNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
             this.delay = delay;
         }
 
@@ -539,8 +1775,13 @@ public class DispatchQueue {
             this.task = task;
         }
 
-        public void setId(long id) {
-            this.id = id;
+        public DispatchContext getContext() {
+            return context;
+        }
+
+        public void setContext(DispatchContext context) {
+            this.context = context;
+            this.id = context == null ? Long.MAX_VALUE : context.getTaskId();
         }
 
         @Override
@@ -549,7 +1790,7 @@ public class DispatchQueue {
             if(diff != 0) {
                 return diff;
             }
-            int result = taskLevel() == NORMAL_TASK ? Long.compare(runMills, o.runMills) : Long.compare(delay, o.delay);
+            int result = taskLevel() == NORMAL_TASK ? Long.compare(runNanos - o.runNanos, 0) : Long.compare(delay, o.delay);
             if(result == 0) {
                 return Long.compare(id, o.id);
             }
@@ -561,12 +1802,12 @@ public class DispatchQueue {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             TaskItem taskItem = (TaskItem) o;
-            return runMills == taskItem.runMills && (Objects.equals(task, taskItem.task));
+            return runNanos == taskItem.runNanos && (Objects.equals(task, taskItem.task));
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(runMills, task);
+            return Objects.hash(runNanos, task);
         }
 
         private int taskLevel() {
@@ -582,11 +1823,4 @@ public class DispatchQueue {
             super(referent);
         }
     }
-
-    private static final class NeedDestroyDispatcherQueueException extends RuntimeException {
-        private static final String MSG = " dispatcherQueue need to destroy. ";
-        public NeedDestroyDispatcherQueueException(String queueName) {
-            super(queueName + MSG);
-        }
-    }
-}
\ No newline at end of file
+}
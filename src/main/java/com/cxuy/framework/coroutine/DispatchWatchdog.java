@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import com.cxuy.framework.util.Logger;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 慢任务检测
+ * <p>
+ * 开启检测的队列在任务开始执行时登记，由公共的后台线程定期检查；
+ * 执行时间超过队列预算的任务会被报告一次，附带工作线程当前的堆栈与任务的提交位置，任务结束时再报告总耗时。
+ */
+final class DispatchWatchdog {
+    private static final String TAG = "DispatchWatchdog";
+    private static final long MIN_SCAN_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final Set<Watch> RUNNING = ConcurrentHashMap.newKeySet();
+    private static final Object SCANNER_LOCK = new Object();
+    private static Thread scanner;
+    // 检查周期取所有预算一半中的最小值
+    private static volatile long scanNanos = Long.MAX_VALUE;
+
+    private DispatchWatchdog() {  }
+
+    static Watch begin(String queueName, long budgetNanos, DispatchContext context) {
+        Watch watch = new Watch(queueName, budgetNanos, context, Thread.currentThread());
+        RUNNING.add(watch);
+        ensureScanner(budgetNanos);
+        return watch;
+    }
+
+    static void end(Watch watch) {
+        RUNNING.remove(watch);
+        if(watch.reported) {
+            long cost = System.nanoTime() - watch.startNanos;
+            Logger.w(TAG, "slow task finished, queue=" + watch.queueName + ", taskId=" + watch.context.getTaskId()
+                    + ", cost=" + TimeUnit.NANOSECONDS.toMillis(cost) + "ms");
+        }
+    }
+
+    private static void ensureScanner(long budgetNanos) {
+        long period = Math.max(budgetNanos / 2, MIN_SCAN_NANOS);
+        if(period < scanNanos) {
+            scanNanos = period;
+        }
+        if(scanner != null) {
+            return;
+        }
+        synchronized(SCANNER_LOCK) {
+            if(scanner != null) {
+                return;
+            }
+            Thread thread = new Thread(DispatchWatchdog::scan, "DispatchWatchdog#Scanner");
+            thread.setDaemon(true);
+            thread.start();
+            scanner = thread;
+        }
+    }
+
+    private static void scan() {
+        while(true) {
+            LockSupport.parkNanos(scanNanos);
+            long now = System.nanoTime();
+            for(Watch watch : RUNNING) {
+                if(!watch.reported && now - watch.startNanos > watch.budgetNanos) {
+                    watch.reported = true;
+                    report(watch, now);
+                }
+            }
+        }
+    }
+
+    private static void report(Watch watch, long now) {
+        // 以工作线程当前的堆栈构造异常，提交位置作为其原因，交由Logger统一打印
+        SlowTaskException stall = new SlowTaskException(watch.context.submitSite);
+        stall.setStackTrace(watch.thread.getStackTrace());
+        Logger.w(TAG, "slow task detected, queue=" + watch.queueName + ", taskId=" + watch.context.getTaskId()
+                + ", thread=" + watch.thread.getName() + ", running=" + TimeUnit.NANOSECONDS.toMillis(now - watch.startNanos)
+                + "ms, budget=" + TimeUnit.NANOSECONDS.toMillis(watch.budgetNanos) + "ms", stall);
+    }
+
+    static final class Watch {
+        private final String queueName;
+        private final long budgetNanos;
+        private final DispatchContext context;
+        private final Thread thread;
+        private final long startNanos = System.nanoTime();
+        private volatile boolean reported = false;
+
+        private Watch(String queueName, long budgetNanos, DispatchContext context, Thread thread) {
+            this.queueName = queueName;
+            this.budgetNanos = budgetNanos;
+            this.context = context;
+            this.thread = thread;
+        }
+    }
+
+    static final class SubmitSite extends Throwable {
+        private static final long serialVersionUID = 1L;
+
+        SubmitSite() {
+            super("task submitted here", null, false, true);
+            // 去掉队列内部的调用层级，只保留调用方的堆栈
+            StackTraceElement[] trace = getStackTrace();
+            int skip = 0;
+            while(skip < trace.length - 1 && trace[skip].getClassName().startsWith(DispatchQueue.class.getName())) {
+                skip++;
+            }
+            setStackTrace(Arrays.copyOfRange(trace, skip, trace.length));
+        }
+    }
+
+    private static final class SlowTaskException extends Throwable {
+        private static final long serialVersionUID = 1L;
+
+        private SlowTaskException(Throwable submitSite) {
+            super("task is still running", submitSite, false, true);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 基于二叉堆的延时任务存储
+ * <p>
+ * 任务项记录自身在堆中的下标，插入、取出与删除任意任务均为O(log n)。
+ */
+final class HeapTaskTimer implements TaskTimer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private DispatchQueue.TaskItem[] heap = new DispatchQueue.TaskItem[INITIAL_CAPACITY];
+    private int size = 0;
+
+    @Override
+    public void add(DispatchQueue.TaskItem item) {
+        if(size == heap.length) {
+            heap = Arrays.copyOf(heap, size << 1);
+        }
+        siftUp(size, item);
+        size++;
+    }
+
+    @Override
+    public DispatchQueue.TaskItem pollExpired(long now) {
+        if(size == 0 || heap[0].getRunNanos() - now > 0) {
+            return null;
+        }
+        DispatchQueue.TaskItem item = heap[0];
+        removeAt(0);
+        return item;
+    }
+
+    @Override
+    public long nextDelay(long now) {
+        if(size == 0) {
+            return -1;
+        }
+        return Math.max(heap[0].getRunNanos() - now, 0);
+    }
+
+    @Override
+    public boolean remove(DispatchQueue.TaskItem item) {
+        int index = item.heapIndex;
+        if(index < 0 || index >= size || heap[index] != item) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear(Consumer<DispatchQueue.TaskItem> consumer) {
+        for(int i = 0; i < size; i++) {
+            DispatchQueue.TaskItem item = heap[i];
+            heap[i] = null;
+            item.heapIndex = -1;
+            consumer.accept(item);
+        }
+        size = 0;
+    }
+
+    private void removeAt(int index) {
+        DispatchQueue.TaskItem removed = heap[index];
+        removed.heapIndex = -1;
+        size--;
+        if(index == size) {
+            heap[size] = null;
+            return;
+        }
+        DispatchQueue.TaskItem last = heap[size];
+        heap[size] = null;
+        siftDown(index, last);
+        if(heap[index] == last) {
+            siftUp(index, last);
+        }
+    }
+
+    private void siftUp(int index, DispatchQueue.TaskItem item) {
+        while(index > 0) {
+            int parent = (index - 1) >>> 1;
+            DispatchQueue.TaskItem parentItem = heap[parent];
+            if(item.compareTo(parentItem) >= 0) {
+                break;
+            }
+            place(index, parentItem);
+            index = parent;
+        }
+        place(index, item);
+    }
+
+    private void siftDown(int index, DispatchQueue.TaskItem item) {
+        int half = size >>> 1;
+        while(index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if(right < size && heap[right].compareTo(heap[child]) < 0) {
+                child = right;
+            }
+            if(item.compareTo(heap[child]) <= 0) {
+                break;
+            }
+            place(index, heap[child]);
+            index = child;
+        }
+        place(index, item);
+    }
+
+    private void place(int index, DispatchQueue.TaskItem item) {
+        heap[index] = item;
+        item.heapIndex = index;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁对象池
+ * <p>
+ * 基于环形数组的多生产者多消费者队列：每个槽位带有序号，放入与取出各自竞争一个原子下标，
+ * 序号决定槽位当前可写还是可读，因此既无需加锁也不会为每次放入分配节点。
+ * 任务项通常在提交线程取出、在分发线程归还，任意线程均可调用。
+ */
+final class ItemRecycler<E> {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong putIndex = new AtomicLong();
+    private final AtomicLong takeIndex = new AtomicLong();
+
+    /**
+     * @param capacity 池的容量，向上取整为2的幂；小于等于0时不缓存任何对象
+     */
+    ItemRecycler(int capacity) {
+        int size = capacity <= 0 ? 0 : Math.max(Integer.highestOneBit(Math.min(capacity, MAX_CAPACITY) - 1) << 1, 1);
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for(int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * 归还对象
+     *
+     * @return 池已满时返回false，对象交由GC回收
+     */
+    boolean offer(E element) {
+        if(elements.length == 0) {
+            return false;
+        }
+        long index = putIndex.get();
+        while(true) {
+            int slot = (int) index & mask;
+            long diff = sequences.get(slot) - index;
+            if(diff == 0) {
+                if(putIndex.compareAndSet(index, index + 1)) {
+                    elements[slot] = element;
+                    // 序号的volatile写入保证取出者能看到元素
+                    sequences.set(slot, index + 1);
+                    return true;
+                }
+                index = putIndex.get();
+            }
+            else if(diff < 0) { // 槽位尚未被取走，池已满
+                return false;
+            }
+            else {
+                index = putIndex.get();
+            }
+        }
+    }
+
+    /**
+     * 取出一个对象
+     *
+     * @return 池为空时返回null
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        if(elements.length == 0) {
+            return null;
+        }
+        long index = takeIndex.get();
+        while(true) {
+            int slot = (int) index & mask;
+            long diff = sequences.get(slot) - (index + 1);
+            if(diff == 0) {
+                if(takeIndex.compareAndSet(index, index + 1)) {
+                    E element = (E) elements[slot];
+                    elements[slot] = null;
+                    sequences.set(slot, index + mask + 1);
+                    return element;
+                }
+                index = takeIndex.get();
+            }
+            else if(diff < 0) { // 槽位尚未写入，池为空
+                return null;
+            }
+            else {
+                index = takeIndex.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按键合并提交的任务
+ * <p>
+ * 同一个键下尚未执行的任务只保留最新的一个，冗余的提交在进入队列前就被合并掉。
+ * 三种模式的键相互独立，判断是否属于同一个键使用{@link Object#equals(Object)}。
+ */
+final class KeyedScheduler {
+    private final DispatchQueue queue;
+    private final ConcurrentHashMap<Object, Slot> coalescing = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, Slot> debouncing = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, Slot> throttling = new ConcurrentHashMap<>();
+
+    KeyedScheduler(DispatchQueue queue) {
+        this.queue = queue;
+    }
+
+    void coalesce(Object key, DispatchQueue.Priority priority, DispatchQueue.Task task) {
+        Slot slot = update(coalescing, key, task, 0);
+        if(slot != null) {
+            submit(coalescing, key, slot, priority, 0, (context) -> {
+                // 移除后不会再有新的提交写入该slot，此时读取到的即为最新任务
+                coalescing.remove(key, slot);
+                slot.task.run(context);
+            });
+        }
+    }
+
+    void debounce(Object key, long windowMillis, DispatchQueue.Task task) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(windowMillis, 0));
+        Slot slot = update(debouncing, key, task, windowNanos);
+        if(slot != null) {
+            submit(debouncing, key, slot, null, windowMillis, (context) -> fireDebounce(key, slot, context));
+        }
+    }
+
+    void throttle(Object key, long windowMillis, DispatchQueue.Task task) {
+        Slot[] created = new Slot[1];
+        throttling.compute(key, (k, existing) -> {
+            if(existing == null) {
+                created[0] = new Slot(task, 0);
+                return created[0];
+            }
+            existing.task = task; // 窗口内的提交合并为窗口结束时执行的一次
+            return existing;
+        });
+        Slot slot = created[0];
+        if(slot != null) { // 窗口外的首次提交立即执行
+            submit(throttling, key, slot, null, 0, (context) -> fireThrottle(key, slot, windowMillis, context));
+        }
+    }
+
+    /**
+     * 更新键对应的任务与截止时间
+     *
+     * @return 新建的slot，已存在时返回null
+     */
+    private Slot update(ConcurrentHashMap<Object, Slot> slots, Object key, DispatchQueue.Task task, long windowNanos) {
+        Slot[] created = new Slot[1];
+        slots.compute(key, (k, existing) -> {
+            if(existing == null) {
+                created[0] = new Slot(task, System.nanoTime() + windowNanos);
+                return created[0];
+            }
+            existing.task = task;
+            existing.deadlineNanos = System.nanoTime() + windowNanos;
+            return existing;
+        });
+        return created[0];
+    }
+
+    /**
+     * 提交slot对应的任务
+     * 任务在执行前被取消（溢出策略丢弃、队列销毁）或提交失败时移除slot，否则该键之后的提交都会被合并进一个永远不会执行的slot
+     */
+    private void submit(ConcurrentHashMap<Object, Slot> slots, Object key, Slot slot, DispatchQueue.Priority priority,
+                        long delay, DispatchQueue.Task task) {
+        DispatchContext context;
+        try {
+            context = queue.asyncWithPriority(priority, delay, task);
+        }
+        catch(RuntimeException e) {
+            slots.remove(key, slot);
+            throw e;
+        }
+        context.setCancelListener(() -> slots.remove(key, slot));
+    }
+
+    private void fireDebounce(Object key, Slot slot, DispatchContext context) {
+        boolean[] due = new boolean[1];
+        debouncing.computeIfPresent(key, (k, existing) -> {
+            if(existing != slot) {
+                return existing;
+            }
+            due[0] = System.nanoTime() - slot.deadlineNanos >= 0;
+            return due[0] ? null : existing;
+        });
+        if(due[0]) {
+            slot.task.run(context);
+            return;
+        }
+        // 窗口内又有新的提交，等待至最新的截止时间
+        long remain = TimeUnit.NANOSECONDS.toMillis(slot.deadlineNanos - System.nanoTime()) + 1;
+        submit(debouncing, key, slot, null, remain, (next) -> fireDebounce(key, slot, next));
+    }
+
+    private void fireThrottle(Object key, Slot slot, long windowMillis, DispatchContext context) {
+        // 与提交方在同一把锁内取走任务，避免丢失并发写入的新任务
+        DispatchQueue.Task[] taken = new DispatchQueue.Task[1];
+        throttling.computeIfPresent(key, (k, existing) -> {
+            if(existing == slot) {
+                taken[0] = slot.task;
+                slot.task = null;
+            }
+            return existing;
+        });
+        try {
+            if(taken[0] != null) {
+                taken[0].run(context);
+            }
+        }
+        finally { // 任务抛出异常时同样需要关闭窗口，否则该键之后的提交不会再执行
+            submit(throttling, key, slot, null, windowMillis, (next) -> closeThrottle(key, slot, windowMillis, next));
+        }
+    }
+
+    private void closeThrottle(Object key, Slot slot, long windowMillis, DispatchContext context) {
+        boolean[] pending = new boolean[1];
+        throttling.computeIfPresent(key, (k, existing) -> {
+            if(existing != slot) {
+                return existing;
+            }
+            pending[0] = slot.task != null;
+            return pending[0] ? existing : null;
+        });
+        if(pending[0]) { // 窗口内有新的提交，执行最新的一次并开始下一个窗口
+            fireThrottle(key, slot, windowMillis, context);
+        }
+    }
+
+    private static final class Slot {
+        private volatile DispatchQueue.Task task;
+        private volatile long deadlineNanos;
+
+        private Slot(DispatchQueue.Task task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多生产者单消费者无锁队列
+ * <p>
+ * 任意线程均可调用{@link #offer(Object)}，{@link #poll()}与{@link #isEmpty()}只允许消费者线程调用。
+ * 生产者之间仅竞争一次原子交换，不会互相阻塞。
+ */
+final class MpscQueue<E> {
+    private final AtomicReference<Node<E>> tail;
+    // 仅由消费者线程读写
+    private Node<E> head;
+
+    MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+    void offer(E element) {
+        Node<E> node = new Node<>(element);
+        Node<E> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    E poll() {
+        Node<E> next = head.next;
+        if(next == null) {
+            return null;
+        }
+        E element = next.element;
+        next.element = null;
+        head = next;
+        return element;
+    }
+
+    /**
+     * 队列是否为空
+     * 生产者已完成交换但尚未链接节点时，{@link #poll()}可能返回null而此方法返回false
+     */
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    private static final class Node<E> {
+        private E element;
+        private volatile Node<E> next;
+
+        private Node(E element) {
+            this.element = element;
+        }
+    }
+}
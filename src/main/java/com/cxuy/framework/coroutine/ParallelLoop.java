@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 数据并行的分块执行
+ * <p>
+ * 将区间切分为若干块，每块作为一个任务提交到队列，块内按顺序执行。
+ * 各块结束时递减原子计数，最后一块结束时完成结果，整个过程不阻塞任何线程。
+ */
+final class ParallelLoop {
+    // 每个并发单位平均分到的块数，块数略多于并发数可以平衡各块耗时的差异
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private ParallelLoop() {  }
+
+    /**
+     * 根据数据量与队列的并发度计算块大小
+     */
+    static int adaptiveChunk(int size, int parallelism) {
+        if(parallelism <= 1) {
+            return Math.max(size, 1);
+        }
+        return Math.max(size / (parallelism * CHUNKS_PER_WORKER), 1);
+    }
+
+    static int chunkSize(DispatchQueue queue, int from, int to, int chunk) {
+        return chunk > 0 ? chunk : adaptiveChunk(to - from, queue.parallelism());
+    }
+
+    static DispatchFuture<Void> forRange(DispatchQueue queue, int from, int to, int chunk, IntConsumer body) {
+        if(body == null) {
+            throw new NullPointerException("body not allow nullable");
+        }
+        DispatchFuture<Void> future = new DispatchFuture<>();
+        run(queue, from, to, chunk, body, future, () -> null);
+        return future;
+    }
+
+    static <T, R> DispatchFuture<List<R>> map(DispatchQueue queue, List<T> list, int chunk, Function<? super T, ? extends R> fn) {
+        if(list == null || fn == null) {
+            throw new NullPointerException("list and fn not allow nullable");
+        }
+        // 先拷贝为数组，避免各块并发访问非线程安全的列表
+        Object[] source = list.toArray();
+        Object[] result = new Object[source.length];
+        DispatchFuture<List<R>> future = new DispatchFuture<>();
+        run(queue, 0, source.length, chunk, (index) -> {
+            @SuppressWarnings("unchecked")
+            T item = (T) source[index];
+            result[index] = fn.apply(item);
+        }, future, () -> {
+            @SuppressWarnings("unchecked")
+            List<R> mapped = (List<R>) Collections.unmodifiableList(Arrays.asList(result));
+            return mapped;
+        });
+        return future;
+    }
+
+    private static <R> void run(DispatchQueue queue, int from, int to, int chunk, IntConsumer body, DispatchFuture<R> future, Supplier<R> result) {
+        if(from >= to) {
+            future.complete(result.get());
+            return;
+        }
+        int step = chunkSize(queue, from, to, chunk);
+        int chunks = (int) ((((long) to - from) + step - 1) / step);
+        AtomicInteger remaining = new AtomicInteger(chunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // 最后一块结束时完成结果；计数的原子递减保证此时能看到所有块的写入
+        Runnable finish = () -> {
+            Throwable error = failure.get();
+            if(error != null) {
+                future.fail(error);
+            }
+            else {
+                future.complete(result.get());
+            }
+        };
+        for(int i = 0; i < chunks; i++) {
+            int start = (int) (from + (long) i * step);
+            int end = (int) Math.min((long) start + step, to);
+            // 块开始执行与执行前被取消只有一方生效，保证只计数一次
+            AtomicBoolean settled = new AtomicBoolean(false);
+            try {
+                DispatchContext submitted = queue.async((context) -> {
+                    if(!settled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        for(int index = start; index < end && failure.get() == null; index++) {
+                            body.accept(index);
+                        }
+                    }
+                    catch(Throwable e) { // 一块失败后其余块尽快结束；Error在记录后原样抛出
+                        failure.compareAndSet(null, e);
+                        if(e instanceof Error fatal) {
+                            throw fatal;
+                        }
+                    }
+                    finally {
+                        if(remaining.decrementAndGet() == 0) {
+                            finish.run();
+                        }
+                    }
+                });
+                // 执行前被取消（队列销毁、溢出丢弃）的块以CancellationException结束整个循环
+                submitted.setCancelListener(() -> {
+                    if(settled.compareAndSet(false, true)) {
+                        failure.compareAndSet(null, new CancellationException());
+                        if(remaining.decrementAndGet() == 0) {
+                            finish.run();
+                        }
+                    }
+                });
+            }
+            catch(RuntimeException e) { // 队列已销毁或已满，剩余的块不再提交
+                failure.compareAndSet(null, e);
+                if(remaining.addAndGet(-(chunks - i)) == 0) {
+                    finish.run();
+                }
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 按优先级分道的等待队列
+ * <p>
+ * 每个优先级一条通道，出队时按权重交错轮询各通道：权重越大被选中的次数越多，
+ * 选中的通道为空时依次退让给高优先级的通道，低优先级通道至少能获得与其权重相当的份额，不会被饿死。
+ */
+final class PriorityLanes<E> {
+    private static final DispatchQueue.Priority[] PRIORITIES = DispatchQueue.Priority.values();
+    // 按权重平滑交错后的通道顺序，例如权重8:4:1时一轮共13次选择
+    private static final int[] SCHEDULE = buildSchedule();
+
+    private final Queue<E>[] lanes;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * @param concurrent 为true时允许多线程并发出入队，否则只允许单个线程访问
+     */
+    @SuppressWarnings("unchecked")
+    PriorityLanes(boolean concurrent) {
+        lanes = (Queue<E>[]) new Queue<?>[PRIORITIES.length];
+        for(int i = 0; i < lanes.length; i++) {
+            lanes[i] = concurrent ? new ConcurrentLinkedQueue<>() : new ArrayDeque<>();
+        }
+    }
+
+    void offer(DispatchQueue.Priority priority, E element) {
+        lanes[priority == null ? DispatchQueue.Priority.DEFAULT.ordinal() : priority.ordinal()].offer(element);
+    }
+
+    E poll() {
+        int preferred = SCHEDULE[Math.floorMod(cursor.getAndIncrement(), SCHEDULE.length)];
+        E element = lanes[preferred].poll();
+        if(element != null) {
+            return element;
+        }
+        for(Queue<E> lane : lanes) {
+            element = lane.poll();
+            if(element != null) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        for(Queue<E> lane : lanes) {
+            if(!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear(Consumer<E> consumer) {
+        for(Queue<E> lane : lanes) {
+            E element;
+            while((element = lane.poll()) != null) {
+                consumer.accept(element);
+            }
+        }
+    }
+
+    /**
+     * 平滑加权轮询：每一步所有通道累加自身权重，选出当前值最大的通道并减去总权重
+     */
+    private static int[] buildSchedule() {
+        int total = 0;
+        for(DispatchQueue.Priority priority : PRIORITIES) {
+            total += priority.weight;
+        }
+        int[] schedule = new int[total];
+        int[] current = new int[PRIORITIES.length];
+        for(int step = 0; step < total; step++) {
+            int best = 0;
+            for(int i = 0; i < PRIORITIES.length; i++) {
+                current[i] += PRIORITIES[i].weight;
+                if(current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[step] = best;
+        }
+        return schedule;
+    }
+}
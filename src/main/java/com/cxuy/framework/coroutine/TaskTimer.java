@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.function.Consumer;
+
+/**
+ * 延时任务的存储结构，仅由分发线程访问，无需加锁
+ * <p>
+ * 所有时间均为{@link System#nanoTime()}。
+ */
+interface TaskTimer {
+    void add(DispatchQueue.TaskItem item);
+
+    /**
+     * 取出一个已到期的任务
+     *
+     * @param now 当前时间
+     * @return 到期任务，没有时返回null
+     */
+    DispatchQueue.TaskItem pollExpired(long now);
+
+    /**
+     * 距离下一个可能到期任务的时间
+     *
+     * @param now 当前时间
+     * @return 纳秒数，没有任何任务时返回-1
+     */
+    long nextDelay(long now);
+
+    boolean remove(DispatchQueue.TaskItem item);
+
+    int size();
+
+    void clear(Consumer<DispatchQueue.TaskItem> consumer);
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮
+ * <p>
+ * 任务按到期时间散列到固定数量的槽位中，每个槽位是一个侵入式双向链表，插入与删除均为O(1)。
+ * 超过一圈的任务留在槽位中，等指针再次转到该槽位时再判断是否到期。
+ * 时间轮不持有线程，由分发线程每次调度时按流逝的时间推进指针。
+ */
+final class TimingWheel implements TaskTimer {
+    static final long DEFAULT_TICK_MILLIS = 1;
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final int mask;
+    private final DispatchQueue.TaskItem[] buckets;
+    private final long startNanos;
+    private final ArrayDeque<DispatchQueue.TaskItem> expired = new ArrayDeque<>();
+
+    private long currentTick = 0;
+    private int size = 0;
+
+    TimingWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    TimingWheel(long tickMillis, int wheelSize) {
+        if(tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive. ");
+        }
+        int normalized = Integer.highestOneBit(wheelSize);
+        if(normalized < wheelSize) {
+            normalized <<= 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = normalized - 1;
+        this.buckets = new DispatchQueue.TaskItem[normalized];
+        this.startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void add(DispatchQueue.TaskItem item) {
+        long tick = Math.max((item.getRunNanos() - startNanos) / tickNanos, currentTick);
+        int slot = (int) (tick & mask);
+        DispatchQueue.TaskItem head = buckets[slot];
+        item.timerSlot = slot;
+        item.timerPrev = null;
+        item.timerNext = head;
+        if(head != null) {
+            head.timerPrev = item;
+        }
+        buckets[slot] = item;
+        size++;
+    }
+
+    @Override
+    public DispatchQueue.TaskItem pollExpired(long now) {
+        if(expired.isEmpty()) {
+            advance(now);
+        }
+        DispatchQueue.TaskItem item = expired.poll();
+        if(item != null) {
+            size--;
+        }
+        return item;
+    }
+
+    @Override
+    public long nextDelay(long now) {
+        if(size == 0) {
+            return -1;
+        }
+        if(!expired.isEmpty()) {
+            return 0;
+        }
+        // 当前槽位的任务尚未到期，取其中最早的到期时间
+        long delay = Long.MAX_VALUE;
+        for(DispatchQueue.TaskItem item = buckets[(int) (currentTick & mask)]; item != null; item = item.timerNext) {
+            delay = Math.min(delay, item.getRunNanos() - now);
+        }
+        // 后续第一个非空槽位的起始时间是其中任务到期时间的下界
+        for(int offset = 1; offset <= mask; offset++) {
+            if(buckets[(int) ((currentTick + offset) & mask)] != null) {
+                delay = Math.min(delay, startNanos + (currentTick + offset) * tickNanos - now);
+                break;
+            }
+        }
+        return Math.max(delay, 0);
+    }
+
+    @Override
+    public boolean remove(DispatchQueue.TaskItem item) {
+        if(item.timerSlot < 0) {
+            if(expired.removeIf((each) -> each == item)) {
+                size--;
+                return true;
+            }
+            return false;
+        }
+        unlink(item);
+        size--;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear(Consumer<DispatchQueue.TaskItem> consumer) {
+        for(int i = 0; i < buckets.length; i++) {
+            DispatchQueue.TaskItem item = buckets[i];
+            while(item != null) {
+                DispatchQueue.TaskItem next = item.timerNext;
+                resetLink(item);
+                consumer.accept(item);
+                item = next;
+            }
+            buckets[i] = null;
+        }
+        DispatchQueue.TaskItem item;
+        while((item = expired.poll()) != null) {
+            consumer.accept(item);
+        }
+        size = 0;
+    }
+
+    private void advance(long now) {
+        long targetTick = (now - startNanos) / tickNanos;
+        int visited = 0;
+        while(true) {
+            DispatchQueue.TaskItem item = buckets[(int) (currentTick & mask)];
+            while(item != null) {
+                DispatchQueue.TaskItem next = item.timerNext;
+                if(item.getRunNanos() - now <= 0) {
+                    unlink(item);
+                    expired.offer(item);
+                }
+                item = next;
+            }
+            visited++;
+            if(currentTick >= targetTick) {
+                return;
+            }
+            if(visited > mask) { // 已经转过一整圈，所有到期任务都已取出
+                currentTick = targetTick;
+                return;
+            }
+            currentTick++;
+        }
+    }
+
+    private void unlink(DispatchQueue.TaskItem item) {
+        DispatchQueue.TaskItem prev = item.timerPrev;
+        DispatchQueue.TaskItem next = item.timerNext;
+        if(prev == null) {
+            buckets[item.timerSlot] = next;
+        }
+        else {
+            prev.timerNext = next;
+        }
+        if(next != null) {
+            next.timerPrev = prev;
+        }
+        resetLink(item);
+    }
+
+    private static void resetLink(DispatchQueue.TaskItem item) {
+        item.timerPrev = null;
+        item.timerNext = null;
+        item.timerSlot = -1;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程执行器
+ * <p>
+ * 每个任务运行在独立的虚拟线程上，阻塞操作不会占用平台线程。
+ * 同时运行的任务数受并发上限约束，超出上限的任务按优先级排队等待，不会回退到提交者线程执行。
+ */
+final class VirtualThreadExecutor {
+    private final ThreadFactory factory;
+    private final int maxConcurrency;
+    private final AtomicInteger running = new AtomicInteger();
+    // 超出并发上限时排队等待的任务，按优先级分道出队
+    private final PriorityLanes<Runnable> pending = new PriorityLanes<>(true);
+    private volatile boolean isShutdown = false;
+
+    private final Object terminationLock = new Object();
+
+    VirtualThreadExecutor(String name, int maxConcurrency) {
+        this.factory = Thread.ofVirtual().name(name + "#Virtual-", 0).factory();
+        this.maxConcurrency = Math.max(maxConcurrency, 1);
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    void execute(DispatchQueue.Priority priority, Runnable runnable) {
+        if(isShutdown) {
+            throw new RejectedExecutionException("virtual thread executor has been shutdown. ");
+        }
+        pending.offer(priority, runnable);
+        tryStart();
+    }
+
+    /**
+     * 关闭执行器，正在运行的任务会执行完毕，排队中的任务不再执行
+     *
+     * @return 排队中尚未开始执行的任务
+     */
+    List<Runnable> shutdown(boolean await) {
+        isShutdown = true;
+        List<Runnable> remaining = new ArrayList<>();
+        pending.clear(remaining::add);
+        if(!await) {
+            return remaining;
+        }
+        synchronized(terminationLock) {
+            while(running.get() > 0) {
+                try {
+                    terminationLock.wait();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    private void tryStart() {
+        while(!pending.isEmpty()) {
+            int current = running.get();
+            if(current >= maxConcurrency) {
+                return;
+            }
+            if(!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable runnable = pending.poll();
+            if(runnable == null) {
+                finish();
+                continue;
+            }
+            factory.newThread(() -> {
+                try {
+                    runnable.run();
+                }
+                finally {
+                    finish();
+                    tryStart();
+                }
+            }).start();
+        }
+    }
+
+    private void finish() {
+        if(running.decrementAndGet() == 0 && (isShutdown || pending.isEmpty())) {
+            synchronized(terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多工作线程的任务窃取执行器
+ * <p>
+ * 每个工作线程持有自己的双端队列：自己从队首取任务，空闲时从其他线程的队尾窃取任务。
+ * 外部提交的任务以轮询方式分发至各个队列，工作线程内部提交的任务直接压入自己的队首。
+ * 工作线程空闲超过存活时间后退出，有新任务时重新创建。
+ */
+final class WorkStealingPool {
+    private static final int STATE_DEAD = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_PARKED = 2;
+
+    private final String name;
+    private final Worker[] workers;
+    // 工作线程空闲后的存活时间，与所属队列的分发线程一致
+    private final long keepAliveNanos;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile boolean isShutdown = false;
+
+    WorkStealingPool(String name, int size, long keepAliveNanos) {
+        this.name = name;
+        this.keepAliveNanos = keepAliveNanos;
+        this.workers = new Worker[Math.max(size, 1)];
+        for(int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(this, i);
+        }
+    }
+
+    int size() {
+        return workers.length;
+    }
+
+    boolean isWorkerThread(Thread thread) {
+        return thread instanceof WorkerThread workerThread && workerThread.worker.pool == this;
+    }
+
+    void execute(Runnable runnable) {
+        if(isShutdown) {
+            throw new DispatchQueue.DispatcherQueueHasDestroyedException(name);
+        }
+        Worker target;
+        Thread current = Thread.currentThread();
+        if(current instanceof WorkerThread thread && thread.worker.pool == this) {
+            // 工作线程内部提交：压入自己的队首，保证局部性
+            target = thread.worker;
+            target.deque.offerFirst(runnable);
+        }
+        else {
+            target = workers[Math.floorMod(cursor.getAndIncrement(), workers.length)];
+            target.deque.offerLast(runnable);
+        }
+        if(isShutdown && target.deque.removeFirstOccurrence(runnable)) { // 与关闭竞争，任务已不会被执行
+            throw new DispatchQueue.DispatcherQueueHasDestroyedException(name);
+        }
+        if(signal(target)) {
+            // 目标线程正在忙，唤醒一个空闲线程来窃取
+            for(Worker worker : workers) {
+                if(worker != target && worker.state.get() == STATE_PARKED && signal(worker)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭执行器，正在执行的任务会执行完毕
+     *
+     * @return 尚未被工作线程取走的任务
+     */
+    List<Runnable> shutdown(boolean await) {
+        isShutdown = true;
+        for(Worker worker : workers) {
+            Thread thread = worker.thread;
+            if(thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        if(await) {
+            for(Worker worker : workers) {
+                Thread thread = worker.thread;
+                if(thread == null || thread == Thread.currentThread()) {
+                    continue;
+                }
+                try {
+                    thread.join();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        List<Runnable> remaining = new ArrayList<>();
+        for(Worker worker : workers) {
+            Runnable runnable;
+            while((runnable = worker.deque.pollFirst()) != null) {
+                remaining.add(runnable);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 通知工作线程有新任务
+     *
+     * @return 目标线程此前已处于运行状态时返回true
+     */
+    private boolean signal(Worker worker) {
+        while(true) {
+            int state = worker.state.get();
+            if(state == STATE_RUNNING) {
+                return true;
+            }
+            if(state == STATE_PARKED) {
+                if(worker.state.compareAndSet(STATE_PARKED, STATE_RUNNING)) {
+                    LockSupport.unpark(worker.thread);
+                    return false;
+                }
+                continue;
+            }
+            if(worker.state.compareAndSet(STATE_DEAD, STATE_RUNNING)) {
+                WorkerThread thread = new WorkerThread(name + "#Worker-" + worker.index, worker);
+                worker.thread = thread;
+                thread.start();
+                return false;
+            }
+        }
+    }
+
+    private Runnable steal(Worker thief) {
+        int length = workers.length;
+        for(int i = 1; i < length; i++) {
+            Worker victim = workers[(thief.index + i) % length];
+            Runnable runnable = victim.deque.pollLast();
+            if(runnable != null) {
+                return runnable;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasStealable(Worker self) {
+        for(Worker worker : workers) {
+            if(worker != self && !worker.deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runWorker(Worker worker) {
+        while(!isShutdown) {
+            Runnable runnable = worker.deque.pollFirst();
+            if(runnable == null) {
+                runnable = steal(worker);
+            }
+            if(runnable != null) {
+                try {
+                    runnable.run();
+                }
+                catch(RuntimeException e) { // 单个任务异常不应导致工作线程退出
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+                continue;
+            }
+            worker.state.set(STATE_PARKED);
+            if(!worker.deque.isEmpty() || hasStealable(worker)) {
+                worker.state.compareAndSet(STATE_PARKED, STATE_RUNNING);
+                continue;
+            }
+            long deadline = System.nanoTime() + keepAliveNanos;
+            while(worker.state.get() == STATE_PARKED && !isShutdown) {
+                long remain = deadline - System.nanoTime();
+                if(remain <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remain);
+            }
+            if(worker.state.compareAndSet(STATE_PARKED, STATE_DEAD)) {
+                // 存活时间到期，退出前再确认一次没有漏掉的任务
+                if(!isShutdown && !worker.deque.isEmpty() && worker.state.compareAndSet(STATE_DEAD, STATE_RUNNING)) {
+                    continue;
+                }
+                return;
+            }
+        }
+        worker.state.set(STATE_DEAD);
+    }
+
+    private static final class Worker {
+        private final WorkStealingPool pool;
+        private final int index;
+        private final ConcurrentLinkedDeque<Runnable> deque = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger state = new AtomicInteger(STATE_DEAD);
+        private volatile Thread thread;
+
+        private Worker(WorkStealingPool pool, int index) {
+            this.pool = pool;
+            this.index = index;
+        }
+    }
+
+    private static final class WorkerThread extends Thread {
+        private final Worker worker;
+
+        private WorkerThread(String name, Worker worker) {
+            super(name);
+            this.worker = worker;
+            setDaemon(false);
+        }
+
+        @Override
+        public void run() {
+            try {
+                worker.pool.runWorker(this.worker);
+            }
+            catch(Throwable e) { // 任务抛出Error时当前线程随之结束，队列中剩余的任务交给新线程
+                worker.state.set(STATE_DEAD);
+                if(!worker.pool.isShutdown && !worker.deque.isEmpty()) {
+                    worker.pool.signal(worker);
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -22,11 +22,16 @@ public class EventBus {
     public static final EventBus standard = new EventBus(); 
 
     private static final String WORKER_NAME = "com.util.EventBus#Worker";
+    // 事件积压超过上限时阻塞发布者，避免无限堆积
+    private static final int WORKER_CAPACITY = 8192;
 
     private final Map<Class<?>, Set<SubscriberWrapper>> subscribers = new HashMap<>(); 
     private final Map<Object, SubscriberWrapper> registers = new HashMap<>(); 
 
-    private final DispatchQueue worker = new DispatchQueue(WORKER_NAME);
+    private final DispatchQueue worker = new DispatchQueue.Builder()
+            .name(WORKER_NAME)
+            .capacity(WORKER_CAPACITY, DispatchQueue.OverflowPolicy.BLOCK)
+            .build();
 
     public void register(Object subscriber) {
         if(subscriber == null) {
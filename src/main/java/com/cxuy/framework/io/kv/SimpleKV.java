@@ -7,6 +7,7 @@ package com.cxuy.framework.io.kv;
 
 import com.cxuy.framework.annotation.Nullable;
 import com.cxuy.framework.context.Context;
+import com.cxuy.framework.coroutine.DispatchQueue;
 import com.cxuy.framework.context.FrameworkContext;
 import com.cxuy.framework.lifecycle.LifecycleObserver;
 import com.cxuy.framework.lifecycle.LifecycleOwner;
@@ -326,8 +327,8 @@ public class SimpleKV implements MapStorage, LifecycleObserver {
             writeCount++;
             applyChange = writeCount == MAX_WRITE_TO_DISK_COUNT;
         }
-        if(applyChange) {
-            apply();
+        if(applyChange) { // 序列化放到io队列上执行，尚未执行的写入合并为一次
+            DispatchQueue.io.coalesce(this, (context) -> apply());
         }
     }
 
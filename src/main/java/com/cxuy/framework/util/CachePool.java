@@ -5,163 +5,1162 @@
 
 package com.cxuy.framework.util;
 
+import com.cxuy.framework.annotation.Nullable;
+import com.cxuy.framework.coroutine.DispatchContext;
+import com.cxuy.framework.coroutine.DispatchFuture;
 import com.cxuy.framework.coroutine.DispatchQueue;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * 线程安全的缓存池
+ * <p>
+ * 键值存放在ConcurrentHashMap中，get/put/remove均在调用线程上同步完成。
+ * 访问顺序由一条双向链表维护，链表只在持有evictionLock时修改：写操作直接更新链表，
+ * 读操作只把节点记入{@link StripedReadBuffer}，由之后获得锁的线程批量回放，因此读操作之间互不阻塞。
+ * 线程可以在持有evictionLock时进入map的compute，但不会在compute中获取evictionLock，避免两把锁互相等待。
+ * <p>
+ * 通过{@link Builder}可以限制条目数量或总权重，每次写入后按淘汰策略淘汰条目，
+ * 被淘汰的条目同样会通知{@link ItemHasDeleted}监听者。
+ * <p>
+ * {@link EvictionPolicy#TINY_LFU}将条目分为三段：新条目先进入占容量1%的窗口，窗口溢出的条目进入试用段，
+ * 在试用段再次被访问的条目晋升到占其余容量80%的保护段。容量不足时，窗口溢出的候选条目与试用段最久未访问的条目
+ * 比较{@link FrequencySketch}记录的访问频率，频率更高者留下，因此一次性的批量扫描不会冲掉热点条目。
+ * <p>
+ * 条目可以设置写入后过期与访问后过期。读取时若条目已过期直接视为未命中；过期条目挂在按到期时间分桶的时间轮上，
+ * 写入、{@link #cleanUp()}或{@link Builder#cleanUpOn(DispatchQueue)}指定的队列定期推进时间轮，将到期条目移除并通知监听者。
+ * 访问后过期的条目被访问时不会立即调整时间轮，而是在到期检查时发现尚未过期再重新挂到新的位置，每个条目的开销均摊为O(1)。
+ * <p>
+ * {@link #get(Object, Loader)}在未命中时加载并写入条目，同一个键同时只有一次加载，并发未命中的线程等待同一次加载的结果。
+ * 设置{@link Builder#refreshAfterWrite(long, TimeUnit)}后，命中写入已久的条目时立即返回旧值，并在加载队列上异步刷新。
+ */
 public final class CachePool<K, M> {
     @FunctionalInterface
     public static interface CachePoolCheckCallback<K, M> {
-        void callback(CachePool<K, M> pool, K key, M model); 
+        void callback(CachePool<K, M> pool, K key, M model);
     }
 
     @FunctionalInterface
     public static interface ItemHasDeleted<K, M> {
-        void hasRemoved(CachePool<K, M> pool, K key, M model); 
+        void hasRemoved(CachePool<K, M> pool, K key, M model);
+    }
+
+    @FunctionalInterface
+    public static interface Loader<K, M> {
+        /**
+         * @return 加载的值，返回null时不写入缓存
+         */
+        M load(K key) throws Exception;
+    }
+
+    public static class CacheLoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CacheLoadException(Object key, Throwable cause) {
+            super("load " + key + " failed. ", cause);
+        }
+    }
+
+    @FunctionalInterface
+    public static interface Weigher<K, M> {
+        /**
+         * @return 条目的权重，不能为负数
+         */
+        int weigh(K key, M model);
     }
 
-    private static final String DISPATCHER_NAME = "com.util.CachePool#worker"; 
+    public enum EvictionPolicy {
+        /** 淘汰最久未访问的条目 */
+        LRU,
+        /** 窗口LRU加基于访问频率的准入（W-TinyLFU），能抵御批量扫描 */
+        TINY_LFU
+    }
 
-    private final Object nodePoolLock = new Object(); 
-    private final Queue<Node<K, M>> nodePool = new LinkedList<>(); 
+    private static final String TAG = "CachePool";
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final long NEVER = Long.MAX_VALUE;
+    // 时间轮的刻度约为最短过期时间的1/64，限制在1毫秒至1秒之间
+    private static final int EXPIRY_TICKS_PER_DURATION = 64;
+    private static final long MIN_EXPIRY_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_EXPIRY_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
 
-    private final DispatchQueue worker = new DispatchQueue(DISPATCHER_NAME);
+    private final ConcurrentHashMap<K, Node<K, M>> searchMap = new ConcurrentHashMap<>();
+    // 正在加载或刷新的键，同一个键同时只有一次加载
+    private final ConcurrentHashMap<K, Loading<M>> loadings = new ConcurrentHashMap<>();
+    private final StripedReadBuffer<Node<K, M>> readBuffer = new StripedReadBuffer<>();
 
-    private final Map<K, Node<K, M>> searchMap = new HashMap<>(); 
-    private final Node<K, M> head = new Node<>(); 
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // 以下字段由evictionLock保护；LRU策略下所有条目都在window中
+    private final AccessQueue<K, M> window = new AccessQueue<>();
+    private final AccessQueue<K, M> probation = new AccessQueue<>();
+    private final AccessQueue<K, M> protectedQueue = new AccessQueue<>();
+    @Nullable
+    private final FrequencySketch<K> sketch;
+    private long linkedCount = 0;
+    private long totalWeight = 0;
 
-    private final Object listenersLock = new Object(); 
-    private final Set<ItemHasDeleted<K, M>> listeners = new HashSet<>(); 
+    private final long maximumSize;
+    private final long maximumWeight;
+    @Nullable
+    private final Weigher<K, M> weigher;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final long expiryTickNanos;
+    private final long refreshAfterWriteNanos;
+    @Nullable
+    private final DispatchQueue loadQueue;
+    // 定期清理任务，未设置清理队列时为null
+    @Nullable
+    private final DispatchContext cleanUpTask;
+    // 由evictionLock保护，第一个会过期的条目写入时创建
+    @Nullable
+    private ExpiryWheel<K, M> expiryWheel;
+
+    private final Object listenersLock = new Object();
+    private final Set<ItemHasDeleted<K, M>> listeners = new HashSet<>();
 
     public CachePool() {
-        head.prevNode = head; 
-        head.nextNode = head; 
+        this(new Builder<>());
+    }
+
+    private CachePool(Builder<K, M> builder) {
+        this.maximumSize = builder.mMaximumSize;
+        this.maximumWeight = builder.mMaximumWeight;
+        this.weigher = builder.mWeigher;
+        if(builder.mPolicy == EvictionPolicy.TINY_LFU) {
+            // 分段大小与权重同一单位：设置了权重计算时按权重，否则按条目数量
+            long maximum = weigher != null ? maximumWeight : maximumSize;
+            this.windowMaximum = Math.max(percentOf(maximum, WINDOW_PERCENT), 1);
+            this.protectedMaximum = percentOf(maximum - windowMaximum, PROTECTED_PERCENT);
+            this.sketch = new FrequencySketch<>();
+            if(maximumSize != UNBOUNDED) {
+                sketch.ensureCapacity(maximumSize);
+            }
+        }
+        else {
+            this.windowMaximum = UNBOUNDED;
+            this.protectedMaximum = 0;
+            this.sketch = null;
+        }
+        this.expireAfterWriteNanos = builder.mExpireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.mExpireAfterAccessNanos;
+        long shortest = Math.min(expireAfterWriteNanos > 0 ? expireAfterWriteNanos : NEVER,
+                expireAfterAccessNanos > 0 ? expireAfterAccessNanos : NEVER);
+        this.expiryTickNanos = Math.min(Math.max(shortest / EXPIRY_TICKS_PER_DURATION, MIN_EXPIRY_TICK_NANOS), MAX_EXPIRY_TICK_NANOS);
+        this.refreshAfterWriteNanos = builder.mRefreshAfterWriteNanos;
+        this.loadQueue = builder.mLoadQueue;
+        this.cleanUpTask = builder.mCleanUpQueue == null ? null : scheduleCleanUp(builder.mCleanUpQueue);
     }
 
     public void put(K key, M model) {
-        if(key == null) {
-            return; 
-        }
-        if(searchMap.containsKey(key)) {
-            worker.async((context) -> {
-                Node<K, M> node = searchMap.remove(key); 
-                node.model = model; 
-                remove(node);
-                insert(head, node);
-            });
-            return; 
-        }
-        Node<K, M> node = obtain(); 
-        node.key = key; 
-        node.model = model; 
-        worker.async((context) -> {
-            searchMap.put(key, node); 
-            insert(head, node);
-        });
+        put(key, model, expireAfterWriteNanos);
     }
 
-    public void remove(K key) {
-        remove(key, null);
+    /**
+     * 写入条目并单独指定其写入后的过期时间，覆盖{@link Builder#expireAfterWrite(long, TimeUnit)}的设置
+     */
+    public void put(K key, M model, long duration, TimeUnit unit) {
+        if(duration <= 0 || unit == null) {
+            throw new IllegalArgumentException("duration must be positive and unit not allow nullable. ");
+        }
+        put(key, model, unit.toNanos(duration));
     }
 
-    public void remove(K key, ItemHasDeleted<K, M> listener) {
+    private void put(K key, M model, long expireAfterNanos) {
         if(key == null) {
-            return; 
+            return;
         }
-        worker.async((context) -> {
-            Node<K, M> node = searchMap.remove(key); 
-            if(node == null) {
-                return; 
+        int weight = weigh(key, model);
+        long now = System.nanoTime();
+        long writeDeadline = expireAfterNanos > 0 ? saturatedAdd(now, expireAfterNanos) : NEVER;
+        Node<K, M>[] expired = newNodeHolder();
+        Node<K, M> node = searchMap.compute(key, (k, current) -> {
+            if(current != null && !isExpired(current, now)) {
+                current.model = model;
+                current.weight = weight;
+                current.writeDeadline = writeDeadline;
+                current.writeNanos = now;
+                current.accessNanos = now;
+                return current;
             }
-            remove(node);
-            synchronized(listenersLock) {
-                if(listener != null && !listeners.contains(listener)) {
-                    listener.hasRemoved(this, key, node.model);
+            if(current != null) { // 已过期的条目视为被移除，写入新的条目
+                current.isAlive = false;
+                expired[0] = current;
+            }
+            Node<K, M> created = new Node<>(k, model, weight);
+            created.writeDeadline = writeDeadline;
+            created.writeNanos = now;
+            created.accessNanos = now;
+            return created;
+        });
+        List<Node<K, M>> removed = null;
+        evictionLock.lock();
+        try {
+            if(expired[0] != null) {
+                detach(expired[0]);
+                removed = collect(removed, expired[0]);
+            }
+            // 新节点在此之前可能已被并发的remove移除，此时不再加入链表
+            if(node.isAlive) {
+                if(node.nextNode == null) {
+                    onAdd(node);
                 }
-                for(ItemHasDeleted<K, M> l : listeners) {
-                    l.hasRemoved(this, key, node.model);
+                else {
+                    onUpdate(node);
                 }
+                scheduleExpiry(node, now);
             }
-            recycle(node);
-        });
+            removed = maintenance(removed);
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        notifyRemoved(removed);
+    }
+
+    @Nullable
+    public M get(K key) {
+        Node<K, M> node = getNode(key);
+        return node == null ? null : node.model;
     }
 
+    /**
+     * 查询条目，未命中时在调用线程上加载并写入
+     * 同一个键的并发未命中只会执行一次加载，其余线程阻塞等待该次加载的结果
+     *
+     * @return 缓存的值或加载的值
+     * @throws CacheLoadException 加载失败，等待同一次加载的线程会收到相同的异常；加载函数内再次加载同一个键时立即失败
+     */
+    @Nullable
+    public M get(K key, Loader<K, M> loader) throws CacheLoadException {
+        if(key == null || loader == null) {
+            return null;
+        }
+        while(true) {
+            Node<K, M> node = getNode(key);
+            if(node != null) {
+                refreshIfStale(node, loader);
+                return node.model;
+            }
+            Loading<M> loading = new Loading<>(false);
+            loading.owner = Thread.currentThread();
+            Loading<M> current = loadings.putIfAbsent(key, loading);
+            if(current == null) {
+                return load(key, loading, loader);
+            }
+            if(current.owner == Thread.currentThread()) {
+                throw recursiveLoad(key);
+            }
+            try {
+                return await(key, current);
+            }
+            catch(CacheLoadException e) {
+                if(!current.refresh) {
+                    throw e;
+                }
+                // 刷新失败只记录在刷新的路径上，等待者重新查询，必要时自行加载
+            }
+        }
+    }
+
+    /**
+     * 查询条目，未命中时在加载队列上加载，单次加载的保证与{@link #get(Object, Loader)}相同
+     * 并发未命中的调用共享同一次加载的结果，不会各自占用加载队列
+     *
+     * @return 命中时为已完成的结果；加载失败时以{@link CacheLoadException}失败
+     */
+    public DispatchFuture<M> getAsync(K key, Loader<K, M> loader) {
+        if(key == null || loader == null) {
+            return DispatchFuture.completed(null);
+        }
+        Node<K, M> node = getNode(key);
+        if(node != null) {
+            refreshIfStale(node, loader);
+            return DispatchFuture.completed(node.model);
+        }
+        return DispatchFuture.of(loadAsync(key, loader));
+    }
+
+    /**
+     * 在调用线程上同步查询并回调
+     */
     public void get(K key, CachePoolCheckCallback<K, M> callback) {
+        if(key == null || callback == null) {
+            return;
+        }
+        callback.callback(this, key, get(key));
+    }
+
+    public boolean contains(K key) {
         if(key == null) {
-            return; 
+            return false;
         }
-        worker.async((context) -> {
-            Node<K, M> node = searchMap.get(key); 
-            if(node == null) {
-                callback.callback(this, key, null);
-                return; 
-            }
-            remove(node);
-            insert(head, node);
-            callback.callback(this, key, node.model);
+        Node<K, M> node = searchMap.get(key);
+        return node != null && (!mayExpire(node) || !isExpired(node, System.nanoTime()));
+    }
+
+    /**
+     * 条目数量，包含已过期但尚未清理的条目
+     */
+    public int size() {
+        return searchMap.size();
+    }
+
+    /**
+     * 立即回放读缓冲、移除到期条目并按容量限制淘汰，被移除的条目会通知监听者
+     * 未设置{@link Builder#cleanUpOn(DispatchQueue)}且长时间没有写入时，可以调用此方法及时清理过期条目
+     */
+    public void cleanUp() {
+        List<Node<K, M>> removed;
+        evictionLock.lock();
+        try {
+            removed = maintenance(null);
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        notifyRemoved(removed);
+    }
+
+    /**
+     * 当前计入容量限制的总权重，未设置权重计算时为条目数量
+     */
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return totalWeight;
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Nullable
+    public M remove(K key) {
+        return remove(key, null);
+    }
+
+    @Nullable
+    public M remove(K key, ItemHasDeleted<K, M> listener) {
+        if(key == null) {
+            return null;
+        }
+        Node<K, M>[] removed = newNodeHolder();
+        searchMap.computeIfPresent(key, (k, current) -> {
+            current.isAlive = false;
+            removed[0] = current;
+            return null;
         });
+        Node<K, M> node = removed[0];
+        if(node == null) {
+            return null;
+        }
+        evictionLock.lock();
+        try {
+            detach(node);
+        }
+        finally {
+            evictionLock.unlock();
+        }
+        notifyRemoved(listener, key, node.model);
+        return mayExpire(node) && isExpired(node, System.nanoTime()) ? null : node.model;
+    }
+
+    /**
+     * 停止{@link Builder#cleanUpOn(DispatchQueue)}设置的定期清理，清理任务不再占用队列
+     * 缓存池仍可继续使用，此后过期条目只在写入或调用{@link #cleanUp()}时清理
+     */
+    public void close() {
+        if(cleanUpTask != null) {
+            cleanUpTask.cancel();
+        }
     }
 
     public void addRemoveListener(ItemHasDeleted<K, M> listener) {
         if(listener == null) {
-            return; 
+            return;
         }
         synchronized(listenersLock) {
             if(listeners.contains(listener)) {
-                return; 
+                return;
             }
-            listeners.add(listener); 
+            listeners.add(listener);
         }
     }
 
     public void removeDeleteListener(ItemHasDeleted<K, M> listener) {
         if(listener == null) {
-            return; 
+            return;
         }
         synchronized(listenersLock) {
-            listeners.remove(listener); 
+            listeners.remove(listener);
         }
     }
-    
-    private Node<K, M> obtain() {
-        synchronized(nodePoolLock) {
-            if(nodePool.isEmpty()) {
-                return new Node<>(); 
+
+    private void notifyRemoved(ItemHasDeleted<K, M> listener, K key, M model) {
+        List<ItemHasDeleted<K, M>> notifying;
+        synchronized(listenersLock) {
+            if(listener != null && listeners.contains(listener)) {
+                listener = null;
+            }
+            notifying = listeners.isEmpty() ? null : new ArrayList<>(listeners);
+        }
+        // 回调在锁外执行，回调中可以再次访问缓存池或增删监听者
+        if(listener != null) {
+            listener.hasRemoved(this, key, model);
+        }
+        if(notifying != null) {
+            for(ItemHasDeleted<K, M> l : notifying) {
+                l.hasRemoved(this, key, model);
             }
-            return nodePool.poll(); 
         }
     }
 
-    private void recycle(Node<K, M> node) {
+    private DispatchQueue loadQueue() {
+        return loadQueue != null ? loadQueue : DispatchQueue.io;
+    }
+
+    /**
+     * 查询未过期的节点并记录一次访问
+     */
+    @Nullable
+    private Node<K, M> getNode(K key) {
+        if(key == null) {
+            return null;
+        }
+        Node<K, M> node = searchMap.get(key);
         if(node == null) {
-            return; 
+            return null;
+        }
+        if(mayExpire(node)) {
+            long now = System.nanoTime();
+            if(isExpired(node, now)) { // 由之后的清理移除并通知
+                return null;
+            }
+            if(expireAfterAccessNanos > 0) {
+                node.accessNanos = now;
+            }
+        }
+        if(readBuffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            }
+            finally {
+                evictionLock.unlock();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 查询未过期的值，不记录访问
+     */
+    @Nullable
+    private M peek(K key) {
+        Node<K, M> node = searchMap.get(key);
+        if(node == null || (mayExpire(node) && isExpired(node, System.nanoTime()))) {
+            return null;
+        }
+        return node.model;
+    }
+
+    private CompletableFuture<M> loadAsync(K key, Loader<K, M> loader) {
+        Node<K, M> node = getNode(key);
+        if(node != null) {
+            refreshIfStale(node, loader);
+            return CompletableFuture.completedFuture(node.model);
+        }
+        Loading<M> loading = new Loading<>(false);
+        Loading<M> current = loadings.putIfAbsent(key, loading);
+        if(current != null) {
+            if(current.owner == Thread.currentThread()) {
+                return CompletableFuture.failedFuture(recursiveLoad(key));
+            }
+            return current.refresh ? current.future.exceptionallyCompose((e) -> loadAsync(key, loader)) : current.future;
+        }
+        submitLoad(key, loading, loader);
+        return loading.future;
+    }
+
+    /**
+     * 执行一次加载并通知等待者，调用前需已取得该键的加载权
+     * Error原样抛出，其余异常包装为{@link CacheLoadException}
+     */
+    @Nullable
+    private M load(K key, Loading<M> loading, Loader<K, M> loader) {
+        M model;
+        try {
+            // 取得加载权之前，上一次加载可能刚刚写入
+            model = loading.refresh ? null : peek(key);
+            if(model == null) {
+                model = loader.load(key);
+                if(model != null) {
+                    put(key, model);
+                }
+            }
+        }
+        catch(Throwable e) {
+            // 先移除再通知，等待者重试时不会再次取到这次失败的加载
+            loadings.remove(key, loading);
+            if(e instanceof Error fatal) {
+                loading.future.completeExceptionally(fatal);
+                throw fatal;
+            }
+            CacheLoadException exception = e instanceof CacheLoadException loadException ? loadException : new CacheLoadException(key, e);
+            loading.future.completeExceptionally(exception);
+            throw exception;
         }
-        synchronized(nodePoolLock) {
-            nodePool.offer(node); 
+        loadings.remove(key, loading);
+        loading.future.complete(model);
+        return model;
+    }
+
+    /**
+     * 在加载队列上执行加载，提交失败时直接以失败结束
+     */
+    private void submitLoad(K key, Loading<M> loading, Loader<K, M> loader) {
+        try {
+            loadQueue().async((context) -> {
+                loading.owner = Thread.currentThread();
+                try {
+                    load(key, loading, loader);
+                }
+                catch(CacheLoadException e) {
+                    if(loading.refresh) { // 刷新失败保留旧值，下次命中时再尝试
+                        Logger.w(TAG, "refresh " + key + " failed. ", e.getCause() != null ? e.getCause() : e);
+                    }
+                }
+            });
+        }
+        catch(RuntimeException e) { // 加载队列已销毁或已满
+            loadings.remove(key, loading);
+            loading.future.completeExceptionally(new CacheLoadException(key, e));
+        }
+    }
+
+    private M await(K key, Loading<M> loading) {
+        try {
+            return loading.future.join();
+        }
+        catch(CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof CacheLoadException loadException ? loadException : new CacheLoadException(key, cause);
+        }
+    }
+
+    private CacheLoadException recursiveLoad(K key) {
+        return new CacheLoadException(key, new IllegalStateException("loader reentered the same key, load it directly instead. "));
+    }
+
+    /**
+     * 条目写入时间超过刷新间隔时在加载队列上异步重新加载，刷新期间仍返回旧值
+     * 与加载共用同一组进行中的键，同一个键不会同时存在两次加载；刷新失败不会传给等待同一个键的调用者
+     */
+    private void refreshIfStale(Node<K, M> node, Loader<K, M> loader) {
+        if(refreshAfterWriteNanos <= 0 || System.nanoTime() - node.writeNanos < refreshAfterWriteNanos) {
+            return;
+        }
+        K key = node.key;
+        Loading<M> refreshing = new Loading<>(true);
+        if(loadings.putIfAbsent(key, refreshing) != null) {
+            return;
+        }
+        submitLoad(key, refreshing, loader);
+    }
+
+    private void notifyRemoved(@Nullable List<Node<K, M>> removed) {
+        if(removed == null) {
+            return;
+        }
+        for(Node<K, M> node : removed) {
+            notifyRemoved(null, node.key, node.model);
         }
     }
 
-    private void remove(Node<K, M> node) {
-        Node<K, M> prev = node.prevNode; 
-        Node<K, M> next = node.nextNode; 
-        prev.nextNode = next; 
-        next.prevNode = prev; 
-        node.nextNode = null; 
-        node.prevNode = null; 
+    private DispatchContext scheduleCleanUp(DispatchQueue queue) {
+        // 队列只弱引用缓存池，缓存池被回收后取消定期清理
+        WeakReference<CachePool<K, M>> ref = new WeakReference<>(this);
+        long period = Math.max(TimeUnit.NANOSECONDS.toMillis(expiryTickNanos), 1);
+        return queue.scheduleWithFixedDelay(period, period, (context) -> {
+            CachePool<K, M> pool = ref.get();
+            if(pool == null) {
+                context.cancel();
+                return;
+            }
+            pool.cleanUp();
+        });
     }
 
-    private void insert(Node<K, M> prev, Node<K, M> node){
-        node.prevNode = prev; 
-        node.nextNode = prev.nextNode; 
-        Node<K, M> nextNode = prev.nextNode; 
-        prev.nextNode = node; 
-        nextNode.prevNode = node; 
+    private boolean mayExpire(Node<K, M> node) {
+        return node.writeDeadline != NEVER || expireAfterAccessNanos > 0;
+    }
+
+    private boolean isExpired(Node<K, M> node, long now) {
+        long writeDeadline = node.writeDeadline;
+        if(writeDeadline != NEVER && now - writeDeadline >= 0) {
+            return true;
+        }
+        return expireAfterAccessNanos > 0 && now - node.accessNanos >= expireAfterAccessNanos;
+    }
+
+    /**
+     * @return 条目当前的到期时间，不会过期时返回NEVER
+     */
+    private long deadlineOf(Node<K, M> node) {
+        long deadline = node.writeDeadline;
+        if(expireAfterAccessNanos > 0) {
+            long accessDeadline = saturatedAdd(node.accessNanos, expireAfterAccessNanos);
+            if(deadline == NEVER || accessDeadline - deadline < 0) {
+                deadline = accessDeadline;
+            }
+        }
+        return deadline;
+    }
+
+    private static long saturatedAdd(long now, long duration) {
+        long result = now + duration;
+        // 溢出时视为永不过期
+        return ((now ^ result) & (duration ^ result)) < 0 ? NEVER : result;
+    }
+
+    private static <E> List<E> collect(@Nullable List<E> list, E element) {
+        if(list == null) {
+            list = new ArrayList<>();
+        }
+        list.add(element);
+        return list;
+    }
+
+    private static long percentOf(long value, int percent) {
+        return value > Long.MAX_VALUE / 100 ? value / 100 * percent : value * percent / 100;
+    }
+
+    private int weigh(K key, M model) {
+        if(weigher == null) {
+            return 1;
+        }
+        int weight = weigher.weigh(key, model);
+        if(weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative. ");
+        }
+        return weight;
+    }
+
+    // 以下方法只在持有evictionLock时调用
+
+    /**
+     * 回放读缓冲、移除到期条目并按容量限制淘汰
+     *
+     * @param removed 已被移除、需要通知监听者的节点
+     * @return 追加了本次移除节点后的列表
+     */
+    @Nullable
+    private List<Node<K, M>> maintenance(@Nullable List<Node<K, M>> removed) {
+        drainReadBuffer();
+        if(expiryWheel != null) {
+            long now = System.nanoTime();
+            List<Node<K, M>>[] expired = newListHolder(removed);
+            expiryWheel.advance(now, (node) -> expired[0] = onExpiryDue(node, now, expired[0]));
+            removed = expired[0];
+        }
+        return evict(removed);
+    }
+
+    private void scheduleExpiry(Node<K, M> node, long now) {
+        long deadline = deadlineOf(node);
+        if(deadline == NEVER) {
+            if(expiryWheel != null) {
+                ExpiryWheel.unschedule(node);
+            }
+            return;
+        }
+        if(expiryWheel == null) {
+            expiryWheel = new ExpiryWheel<>(expiryTickNanos, now);
+        }
+        expiryWheel.schedule(node, deadline);
+    }
+
+    /**
+     * 时间轮上的条目到期：确已过期则移除，否则（期间被访问或重新写入）按新的到期时间重新挂到时间轮上
+     */
+    @Nullable
+    private List<Node<K, M>> onExpiryDue(Node<K, M> node, long now, @Nullable List<Node<K, M>> removed) {
+        if(!node.isAlive) {
+            return removed;
+        }
+        if(isExpired(node, now)) {
+            boolean[] expired = new boolean[1];
+            searchMap.computeIfPresent(node.key, (k, current) -> {
+                // 在compute中再次确认，避免移除刚被重新写入的条目
+                if(current != node || !isExpired(current, now)) {
+                    return current;
+                }
+                node.isAlive = false;
+                expired[0] = true;
+                return null;
+            });
+            if(expired[0]) {
+                detach(node);
+                return collect(removed, node);
+            }
+        }
+        if(node.isAlive) {
+            expiryWheel.schedule(node, deadlineOf(node));
+        }
+        return removed;
+    }
+
+    private void onAdd(Node<K, M> node) {
+        node.policyWeight = node.weight;
+        node.queue = WINDOW;
+        window.addFirst(node);
+        linkedCount++;
+        totalWeight += node.policyWeight;
+        if(sketch != null) {
+            if(maximumSize == UNBOUNDED) { // 只按权重限制时，统计表随条目数量增长
+                sketch.ensureCapacity(linkedCount);
+            }
+            sketch.increment(node.key);
+        }
+    }
+
+    private void onUpdate(Node<K, M> node) {
+        int delta = node.weight - node.policyWeight;
+        if(delta != 0) {
+            queueOf(node).weight += delta;
+            totalWeight += delta;
+            node.policyWeight = node.weight;
+        }
+        onAccess(node);
+        if(delta > 0 && node.queue == PROTECTED) {
+            demoteProtected();
+        }
+    }
+
+    private void onAccess(Node<K, M> node) {
+        if(sketch == null) {
+            window.moveToFirst(node);
+            return;
+        }
+        sketch.increment(node.key);
+        if(node.queue == PROBATION) { // 试用段的条目再次被访问，晋升到保护段
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addFirst(node);
+            demoteProtected();
+        }
+        else {
+            queueOf(node).moveToFirst(node);
+        }
+    }
+
+    private void demoteProtected() {
+        while(protectedQueue.weight > protectedMaximum && protectedQueue.count > 1) {
+            Node<K, M> demoted = protectedQueue.last();
+            protectedQueue.remove(demoted);
+            demoted.queue = PROBATION;
+            probation.addFirst(demoted);
+        }
+    }
+
+    /**
+     * 淘汰条目直至满足容量限制
+     *
+     * @param evicted 已被移除、需要通知监听者的节点
+     * @return 追加了被淘汰节点后的列表
+     */
+    @Nullable
+    private List<Node<K, M>> evict(@Nullable List<Node<K, M>> evicted) {
+        // 本轮从窗口移入试用段的条目数，它们位于试用段的头部，需要经过频率比较才能留下
+        int candidates = 0;
+        if(sketch != null) {
+            while(window.weight > windowMaximum && window.count > 0) {
+                Node<K, M> node = window.last();
+                window.remove(node);
+                node.queue = PROBATION;
+                probation.addFirst(node);
+                candidates++;
+            }
+        }
+        while((linkedCount > maximumSize || totalWeight > maximumWeight) && linkedCount > 0) {
+            Node<K, M> evictee;
+            if(sketch == null) {
+                evictee = window.last();
+            }
+            else {
+                Node<K, M> candidate = candidates > 0 ? probation.first() : null;
+                Node<K, M> victim = probation.count > candidates ? probation.last() : protectedQueue.last();
+                if(candidate == null) {
+                    evictee = victim != null ? victim : window.last();
+                }
+                else if(victim == null) { // 试用段中只剩候选条目
+                    evictee = probation.last();
+                    candidates--;
+                }
+                else if(sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evictee = victim;
+                }
+                else {
+                    evictee = candidate;
+                    candidates--;
+                }
+            }
+            if(evictNode(evictee)) {
+                evicted = collect(evicted, evictee);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return 节点仍在map中并被本次淘汰时返回true，已被并发的remove移除时返回false
+     */
+    private boolean evictNode(Node<K, M> victim) {
+        boolean[] removed = new boolean[1];
+        searchMap.computeIfPresent(victim.key, (k, current) -> {
+            if(current != victim) {
+                return current;
+            }
+            victim.isAlive = false;
+            removed[0] = true;
+            return null;
+        });
+        detach(victim);
+        return removed[0];
+    }
+
+    /**
+     * 将节点移出所在的队列与时间轮，并扣除其计入的权重
+     */
+    private void detach(Node<K, M> node) {
+        if(expiryWheel != null) {
+            ExpiryWheel.unschedule(node);
+        }
+        if(node.nextNode == null) {
+            return;
+        }
+        queueOf(node).remove(node);
+        linkedCount--;
+        totalWeight -= node.policyWeight;
+        node.policyWeight = 0;
+    }
+
+    private AccessQueue<K, M> queueOf(Node<K, M> node) {
+        return switch(node.queue) {
+            case PROBATION -> probation;
+            case PROTECTED -> protectedQueue;
+            default -> window;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, M>[] newNodeHolder() {
+        return (Node<K, M>[]) new Node<?, ?>[1];
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Node<K, M>>[] newListHolder(@Nullable List<Node<K, M>> initial) {
+        List<Node<K, M>>[] holder = (List<Node<K, M>>[]) new List<?>[1];
+        holder[0] = initial;
+        return holder;
+    }
+
+    private void drainReadBuffer() {
+        readBuffer.drain((node) -> {
+            if(node.isAlive && node.nextNode != null) { // 已被移除或尚未链接的节点无需调整顺序
+                onAccess(node);
+            }
+        });
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，head.nextNode为最近访问的节点
+     */
+    private static final class AccessQueue<K, M> {
+        private final Node<K, M> head = new Node<>(null, null, 0);
+        private long weight = 0;
+        private int count = 0;
+
+        private AccessQueue() {
+            head.prevNode = head;
+            head.nextNode = head;
+        }
+
+        @Nullable
+        private Node<K, M> first() {
+            return head.nextNode == head ? null : head.nextNode;
+        }
+
+        @Nullable
+        private Node<K, M> last() {
+            return head.prevNode == head ? null : head.prevNode;
+        }
+
+        private void addFirst(Node<K, M> node) {
+            node.prevNode = head;
+            node.nextNode = head.nextNode;
+            head.nextNode.prevNode = node;
+            head.nextNode = node;
+            weight += node.policyWeight;
+            count++;
+        }
+
+        private void remove(Node<K, M> node) {
+            node.prevNode.nextNode = node.nextNode;
+            node.nextNode.prevNode = node.prevNode;
+            node.nextNode = null;
+            node.prevNode = null;
+            weight -= node.policyWeight;
+            count--;
+        }
+
+        private void moveToFirst(Node<K, M> node) {
+            if(head.nextNode == node) {
+                return;
+            }
+            remove(node);
+            addFirst(node);
+        }
+    }
+
+    /**
+     * 按到期时间分桶的时间轮，每个桶是一条以哨兵节点开头的环形链表
+     * 超出一圈的条目放在对应的桶中，转到该桶时检查发现尚未到期再留在原处，因此无需分层
+     */
+    private static final class ExpiryWheel<K, M> {
+        private static final int BUCKETS = 256;
+        private static final int MASK = BUCKETS - 1;
+
+        private final Node<K, M>[] buckets;
+        private final int shift;
+        // 下一个待检查的刻度
+        private long currentTick;
+
+        @SuppressWarnings("unchecked")
+        private ExpiryWheel(long tickNanos, long now) {
+            this.shift = 64 - Long.numberOfLeadingZeros(tickNanos - 1);
+            this.currentTick = now >> shift;
+            this.buckets = (Node<K, M>[]) new Node<?, ?>[BUCKETS];
+            for(int i = 0; i < BUCKETS; i++) {
+                Node<K, M> sentinel = new Node<>(null, null, 0);
+                sentinel.wheelPrev = sentinel;
+                sentinel.wheelNext = sentinel;
+                buckets[i] = sentinel;
+            }
+        }
+
+        private void schedule(Node<K, M> node, long deadline) {
+            unschedule(node);
+            long tick = deadline >> shift;
+            if(tick - currentTick < 0) { // 已经到期，放入下一个待检查的桶
+                tick = currentTick;
+            }
+            Node<K, M> sentinel = buckets[(int) (tick & MASK)];
+            node.wheelPrev = sentinel.wheelPrev;
+            node.wheelNext = sentinel;
+            sentinel.wheelPrev.wheelNext = node;
+            sentinel.wheelPrev = node;
+        }
+
+        private static <K, M> void unschedule(Node<K, M> node) {
+            if(node.wheelNext == null) {
+                return;
+            }
+            node.wheelPrev.wheelNext = node.wheelNext;
+            node.wheelNext.wheelPrev = node.wheelPrev;
+            node.wheelPrev = null;
+            node.wheelNext = null;
+        }
+
+        /**
+         * 检查now之前已经走完的刻度，桶中的条目逐个交给onDue处理
+         */
+        private void advance(long now, Consumer<Node<K, M>> onDue) {
+            long target = now >> shift;
+            long steps = Math.min(target - currentTick, BUCKETS);
+            for(long i = 0; i < steps; i++) {
+                Node<K, M> sentinel = buckets[(int) (currentTick & MASK)];
+                currentTick++;
+                Node<K, M> node = sentinel.wheelNext;
+                if(node == sentinel) {
+                    continue;
+                }
+                // 先摘下整个桶，处理过程中重新挂回的条目不会在本轮被重复处理
+                sentinel.wheelPrev.wheelNext = null;
+                sentinel.wheelPrev = sentinel;
+                sentinel.wheelNext = sentinel;
+                while(node != null) {
+                    Node<K, M> next = node.wheelNext;
+                    node.wheelPrev = null;
+                    node.wheelNext = null;
+                    onDue.accept(node);
+                    node = next;
+                }
+            }
+            if(target - currentTick > 0) {
+                currentTick = target;
+            }
+        }
+    }
+
+    /**
+     * 一个键上进行中的加载或刷新
+     */
+    private static final class Loading<M> {
+        private final CompletableFuture<M> future = new CompletableFuture<>();
+        // 刷新失败时等待者不接收该异常，而是重新查询
+        private final boolean refresh;
+        // 正在执行加载的线程，用于发现加载函数内对同一个键的重入
+        private volatile Thread owner;
+
+        private Loading(boolean refresh) {
+            this.refresh = refresh;
+        }
     }
 
     private static class Node<K, M> {
-        private K key; 
-        private M model; 
-        private Node<K, M> prevNode; 
-        private Node<K, M> nextNode; 
+        private final K key;
+        private volatile M model;
+        // 从map中移除后置为false，在map的compute中修改
+        private volatile boolean isAlive = true;
+        // 最新的权重，在map的compute中修改
+        private volatile int weight;
+        // 以下字段由evictionLock保护
+        private Node<K, M> prevNode;
+        private Node<K, M> nextNode;
+        // 已计入totalWeight的权重
+        private int policyWeight = 0;
+        // 所在的队列
+        private int queue = WINDOW;
+        // 写入后的到期时间与最近访问时间（System.nanoTime），在map的compute与get中修改
+        private volatile long writeDeadline = NEVER;
+        private volatile long writeNanos;
+        private volatile long accessNanos;
+        // 时间轮中的链表指针，由evictionLock保护
+        private Node<K, M> wheelPrev;
+        private Node<K, M> wheelNext;
+
+        private Node(K key, M model, int weight) {
+            this.key = key;
+            this.model = model;
+            this.weight = weight;
+        }
+    }
+
+    public static class Builder<K, M> {
+        private long mMaximumSize = UNBOUNDED;
+        private long mMaximumWeight = UNBOUNDED;
+        private Weigher<K, M> mWeigher;
+        private EvictionPolicy mPolicy = EvictionPolicy.LRU;
+        private long mExpireAfterWriteNanos = 0;
+        private long mExpireAfterAccessNanos = 0;
+        private DispatchQueue mCleanUpQueue;
+        private long mRefreshAfterWriteNanos = 0;
+        private DispatchQueue mLoadQueue;
+
+        public Builder() {  }
+
+        /**
+         * 容量受限时的淘汰策略，默认为{@link EvictionPolicy#LRU}
+         */
+        public Builder<K, M> evictionPolicy(EvictionPolicy policy) {
+            if(policy == null) {
+                throw new IllegalArgumentException("policy not allow nullable. ");
+            }
+            this.mPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 限制条目数量，超出时淘汰最久未访问的条目
+         */
+        public Builder<K, M> maximumSize(long size) {
+            if(size < 0) {
+                throw new IllegalArgumentException("maximum size must not be negative. ");
+            }
+            this.mMaximumSize = size;
+            return this;
+        }
+
+        /**
+         * 限制条目的总权重，超出时淘汰最久未访问的条目
+         *
+         * @param weigher 在写入时计算条目的权重
+         */
+        public Builder<K, M> maximumWeight(long weight, Weigher<K, M> weigher) {
+            if(weight < 0 || weigher == null) {
+                throw new IllegalArgumentException("maximum weight must not be negative and weigher not allow nullable. ");
+            }
+            this.mMaximumWeight = weight;
+            this.mWeigher = weigher;
+            return this;
+        }
+
+        /**
+         * 条目写入（或被重新写入）后经过指定时间过期
+         */
+        public Builder<K, M> expireAfterWrite(long duration, TimeUnit unit) {
+            this.mExpireAfterWriteNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * 条目最近一次读取或写入后经过指定时间过期
+         */
+        public Builder<K, M> expireAfterAccess(long duration, TimeUnit unit) {
+            this.mExpireAfterAccessNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * 在指定队列上定期清理过期条目，适合写入稀少但需要及时收到过期通知的缓存
+         * 未设置时过期条目只在写入或调用{@link CachePool#cleanUp()}时清理，不再使用时调用{@link CachePool#close()}停止清理
+         */
+        public Builder<K, M> cleanUpOn(DispatchQueue queue) {
+            this.mCleanUpQueue = queue;
+            return this;
+        }
+
+        /**
+         * 通过{@link CachePool#get(Object, Loader)}命中写入已超过指定时间的条目时，返回旧值并异步刷新
+         * 刷新间隔应短于写入后过期的时间，否则条目会先过期而无法提前刷新
+         */
+        public Builder<K, M> refreshAfterWrite(long duration, TimeUnit unit) {
+            this.mRefreshAfterWriteNanos = toPositiveNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * 异步加载与刷新使用的队列，默认为{@link DispatchQueue#io}
+         */
+        public Builder<K, M> loadOn(DispatchQueue queue) {
+            this.mLoadQueue = queue;
+            return this;
+        }
+
+        private static long toPositiveNanos(long duration, TimeUnit unit) {
+            if(duration <= 0 || unit == null) {
+                throw new IllegalArgumentException("duration must be positive and unit not allow nullable. ");
+            }
+            return unit.toNanos(duration);
+        }
+
+        public CachePool<K, M> build() {
+            return new CachePool<>(this);
+        }
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.util;
+
+/**
+ * 访问频率的近似统计（Count-Min Sketch）
+ * <p>
+ * 计数器分为4行，每个计数器占4位，16个打包在一个long中，上限为15。元素在每一行各对应一个计数器，
+ * 第i行的位置由元素哈希拆出的两个值以双重哈希得到（h1 + i * h2），频率取4个计数器中的最小值。
+ * 记录访问时只增加等于最小值的计数器（保守更新），减少哈希冲突造成的高估。
+ * 累计记录次数达到容量的10倍后所有计数器减半，使旧的热度随时间衰减。
+ * 非线程安全，由CachePool在持有淘汰锁时调用。
+ */
+final class FrequencySketch<E> {
+    private static final int ROWS = 4;
+    private static final int MAX_FREQUENCY = 15;
+    // 每行的计数器数量与容量之比
+    private static final int COUNTERS_PER_ENTRY = 4;
+    // 减半时去掉每个计数器移入的高位
+    private static final long HALVE_MASK = 0x7777777777777777L;
+
+    // 第row行的第column个计数器位于rows[row][column >>> 4]的第(column & 15)个4位
+    private final long[][] rows = new long[ROWS][0];
+    private int columnMask = -1;
+    private int sampleSize;
+    private int additions;
+
+    /**
+     * 按预计的元素数量调整计数器表的大小，表只会变大，变大时已有的统计会被清空
+     */
+    void ensureCapacity(long maximumSize) {
+        int capacity = (int) Math.min(Math.max(maximumSize, 8), 1 << 26);
+        int columns = Integer.highestOneBit(capacity * COUNTERS_PER_ENTRY - 1) << 1;
+        if(columns - 1 <= columnMask) {
+            return;
+        }
+        for(int row = 0; row < ROWS; row++) {
+            rows[row] = new long[columns >>> 4];
+        }
+        columnMask = columns - 1;
+        sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        additions = 0;
+    }
+
+    int frequency(E element) {
+        if(columnMask < 0) {
+            return 0;
+        }
+        int h1 = mix(element.hashCode());
+        int h2 = mix(h1) | 1;
+        int frequency = MAX_FREQUENCY;
+        for(int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, counter(row, (h1 + row * h2) & columnMask));
+        }
+        return frequency;
+    }
+
+    void increment(E element) {
+        if(columnMask < 0) {
+            return;
+        }
+        int h1 = mix(element.hashCode());
+        int h2 = mix(h1) | 1;
+        int min = MAX_FREQUENCY;
+        for(int row = 0; row < ROWS; row++) {
+            min = Math.min(min, counter(row, (h1 + row * h2) & columnMask));
+        }
+        if(min == MAX_FREQUENCY) {
+            return;
+        }
+        for(int row = 0; row < ROWS; row++) {
+            int column = (h1 + row * h2) & columnMask;
+            if(counter(row, column) == min) { // 大于最小值的计数器已包含其他元素的计数，无需再增加
+                rows[row][column >>> 4] += 1L << ((column & 15) << 2);
+            }
+        }
+        if(++additions == sampleSize) {
+            halve();
+        }
+    }
+
+    private int counter(int row, int column) {
+        return (int) (rows[row][column >>> 4] >>> ((column & 15) << 2)) & 0xf;
+    }
+
+    /**
+     * 所有计数器减半，已记录的次数随之减半
+     */
+    private void halve() {
+        for(long[] row : rows) {
+            for(int i = 0; i < row.length; i++) {
+                row[i] = (row[i] >>> 1) & HALVE_MASK;
+            }
+        }
+        additions >>>= 1;
+    }
+
+    /**
+     * murmur3的32位收尾混合，使hashCode的每一位都影响结果的低位
+     */
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        return x ^ (x >>> 16);
+    }
+}
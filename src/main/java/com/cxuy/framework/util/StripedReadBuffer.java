@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * 分段的有损读缓冲
+ * <p>
+ * 读操作只需把被访问的元素记入缓冲，由持有淘汰锁的线程批量回放，读操作之间互不加锁。
+ * 线程按编号散列到不同分段以减少竞争；分段已满或竞争失败时直接丢弃本次记录，访问顺序只是近似值。
+ * {@link #drain(Consumer)}只允许在持有外部锁时调用。
+ */
+final class StripedReadBuffer<E> {
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final int stripeMask;
+    private final AtomicReferenceArray<E> slots;
+    // 分段内已写入与已回放的计数，写入计数由读线程竞争，回放计数仅由持锁线程修改
+    private final AtomicLongArray writeCounts;
+    private final AtomicLongArray readCounts;
+
+    StripedReadBuffer() {
+        int stripes = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1) * 2 - 1);
+        this.stripeMask = stripes - 1;
+        this.slots = new AtomicReferenceArray<>(stripes * STRIPE_SIZE);
+        this.writeCounts = new AtomicLongArray(stripes);
+        this.readCounts = new AtomicLongArray(stripes);
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @return 所在分段已满时返回true，调用者应尝试回放
+     */
+    boolean offer(E element) {
+        int stripe = stripe();
+        long write = writeCounts.get(stripe);
+        long pending = write - readCounts.get(stripe);
+        if(pending >= STRIPE_SIZE) {
+            return true;
+        }
+        if(writeCounts.compareAndSet(stripe, write, write + 1)) {
+            slots.lazySet(stripe * STRIPE_SIZE + (int) (write & STRIPE_MASK), element);
+            return pending + 1 >= STRIPE_SIZE;
+        }
+        return false;
+    }
+
+    void drain(Consumer<E> consumer) {
+        for(int stripe = 0; stripe <= stripeMask; stripe++) {
+            long read = readCounts.get(stripe);
+            long write = writeCounts.get(stripe);
+            int base = stripe * STRIPE_SIZE;
+            while(read < write) {
+                E element = slots.getAndSet(base + (int) (read & STRIPE_MASK), null);
+                if(element == null) { // 读线程已占位但尚未写入，下次再回放
+                    break;
+                }
+                consumer.accept(element);
+                read++;
+            }
+            readCounts.lazySet(stripe, read);
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().threadId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.benchmark;
+
+import com.cxuy.framework.util.CachePool;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachePool淘汰策略基准
+ * <p>
+ * 用同一组访问序列分别驱动LRU与W-TinyLFU两种策略：未命中时写入缓存，统计命中率与每秒完成的访问次数。
+ * 访问序列包括：
+ * zipf   按Zipf分布访问热点键；
+ * scan   Zipf访问中周期性插入一次性的顺序扫描，扫描的键数为缓存容量的数倍。
+ * 运行方式：直接执行main方法，可通过参数指定访问次数（默认400万）。
+ */
+public class CachePoolEvictionBenchmark {
+    private static final int DEFAULT_REQUESTS = 4_000_000;
+    private static final int KEY_SPACE = 100_000;
+    private static final int CAPACITY = 2_000;
+    private static final double ZIPF_EXPONENT = 0.9;
+    // 每访问SCAN_INTERVAL次后插入一次长度为SCAN_LENGTH的顺序扫描
+    private static final int SCAN_INTERVAL = 20_000;
+    private static final int SCAN_LENGTH = CAPACITY * 5;
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REQUESTS;
+        Integer[] keys = new Integer[KEY_SPACE + SCAN_LENGTH * (requests / SCAN_INTERVAL + 1)];
+        for(int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        int[] zipf = zipfTrace(requests, new Random(42));
+        int[] scan = scanTrace(zipf);
+        System.out.printf("%-6s %-10s %-10s %s%n", "trace", "policy", "hit rate", "ops/s");
+        for(CachePool.EvictionPolicy policy : CachePool.EvictionPolicy.values()) {
+            run("zipf", policy, zipf, keys);
+        }
+        for(CachePool.EvictionPolicy policy : CachePool.EvictionPolicy.values()) {
+            run("scan", policy, scan, keys);
+        }
+    }
+
+    private static void run(String trace, CachePool.EvictionPolicy policy, int[] accesses, Integer[] keys) {
+        replay(policy, accesses, keys); // 预热
+        CachePool<Integer, Integer> pool = new CachePool.Builder<Integer, Integer>()
+                .maximumSize(CAPACITY)
+                .evictionPolicy(policy)
+                .build();
+        long hits = 0;
+        long begin = System.nanoTime();
+        for(int access : accesses) {
+            Integer key = keys[access];
+            if(pool.get(key) != null) {
+                hits++;
+            }
+            else {
+                pool.put(key, key);
+            }
+        }
+        long cost = System.nanoTime() - begin;
+        double opsPerSecond = accesses.length / (cost / (double) TimeUnit.SECONDS.toNanos(1));
+        System.out.printf("%-6s %-10s %-10.4f %.0f%n", trace, policy, hits / (double) accesses.length, opsPerSecond);
+    }
+
+    private static void replay(CachePool.EvictionPolicy policy, int[] accesses, Integer[] keys) {
+        CachePool<Integer, Integer> pool = new CachePool.Builder<Integer, Integer>()
+                .maximumSize(CAPACITY)
+                .evictionPolicy(policy)
+                .build();
+        for(int access : accesses) {
+            Integer key = keys[access];
+            if(pool.get(key) == null) {
+                pool.put(key, key);
+            }
+        }
+    }
+
+    /**
+     * 按累积分布二分查找生成Zipf分布的键，键0最热
+     */
+    private static int[] zipfTrace(int requests, Random random) {
+        double[] cdf = new double[KEY_SPACE];
+        double sum = 0;
+        for(int i = 0; i < KEY_SPACE; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cdf[i] = sum;
+        }
+        int[] trace = new int[requests];
+        for(int i = 0; i < requests; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = KEY_SPACE - 1;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(cdf[mid] < target) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            trace[i] = low;
+        }
+        return trace;
+    }
+
+    /**
+     * 在Zipf访问序列中周期性插入顺序扫描，扫描的键不与热点键重叠且只出现一次
+     */
+    private static int[] scanTrace(int[] zipf) {
+        int scans = zipf.length / SCAN_INTERVAL;
+        int[] trace = new int[zipf.length + scans * SCAN_LENGTH];
+        int position = 0;
+        int nextScanKey = KEY_SPACE;
+        for(int i = 0; i < zipf.length; i++) {
+            trace[position++] = zipf[i];
+            if((i + 1) % SCAN_INTERVAL == 0) {
+                for(int j = 0; j < SCAN_LENGTH; j++) {
+                    trace[position++] = nextScanKey++;
+                }
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.benchmark;
+
+import com.cxuy.framework.coroutine.DispatchQueue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DispatchQueue任务项复用的内存分配基准
+ * <p>
+ * 单个生产者按窗口向串行队列提交空任务，每个窗口执行完毕后再提交下一个窗口，模拟稳定负载。
+ * 统计JVM全部线程分配的字节数，对比不复用任务项与不同对象池容量下每个任务分配的字节数。
+ * 运行方式：直接执行main方法，可通过参数指定任务总数（默认500万）。
+ */
+public class DispatchQueueAllocationBenchmark {
+    private static final int[] RECYCLER_CAPACITIES = { 0, 64, 256 };
+    private static final int DEFAULT_TASKS = 5_000_000;
+    private static final int WINDOW = 128;
+
+    private static final AtomicLong COMPLETED = new AtomicLong();
+
+    public static void main(String[] args) {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        System.out.printf("%-10s %-14s %s%n", "recycler", "tasks", "bytes/task");
+        for(int capacity : RECYCLER_CAPACITIES) {
+            DispatchQueue queue = new DispatchQueue.Builder().name("bench-alloc").recyclerCapacity(capacity).build();
+            run(queue, tasks / 10); // 预热
+            long before = threads.getTotalThreadAllocatedBytes();
+            run(queue, tasks);
+            long allocated = threads.getTotalThreadAllocatedBytes() - before;
+            queue.awaitShutdown();
+            System.out.printf("%-10d %-14d %.1f%n", capacity, tasks, allocated / (double) tasks);
+        }
+    }
+
+    private static void run(DispatchQueue queue, int tasks) {
+        long target = COMPLETED.get();
+        for(int submitted = 0; submitted < tasks; submitted += WINDOW) {
+            int count = Math.min(WINDOW, tasks - submitted);
+            for(int i = 0; i < count; i++) {
+                queue.async((context) -> COMPLETED.incrementAndGet());
+            }
+            target += count;
+            while(COMPLETED.get() < target) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.benchmark;
+
+import com.cxuy.framework.coroutine.DispatchQueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DispatchQueue批量执行基准
+ * <p>
+ * 单个生产者向串行队列提交大量空任务，对比不同批量大小下每秒完成的任务数。
+ * 运行方式：直接执行main方法，可通过参数指定任务总数（默认1000万）。
+ */
+public class DispatchQueueBatchBenchmark {
+    private static final int[] BATCH_SIZES = { 1, 16, 64, 256 };
+    private static final int DEFAULT_TASKS = 10_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS;
+        System.out.printf("%-8s %-14s %s%n", "batch", "tasks", "ops/s");
+        for(int batchSize : BATCH_SIZES) {
+            run(batchSize, tasks / 10); // 预热
+            long cost = run(batchSize, tasks);
+            double opsPerSecond = tasks / (cost / (double) TimeUnit.SECONDS.toNanos(1));
+            System.out.printf("%-8d %-14d %.0f%n", batchSize, tasks, opsPerSecond);
+        }
+    }
+
+    private static long run(int batchSize, int tasks) throws InterruptedException {
+        DispatchQueue queue = new DispatchQueue.Builder().name("bench-batch").batchSize(batchSize).build();
+        CountDownLatch done = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        for(int i = 1; i < tasks; i++) {
+            queue.async((context) -> { });
+        }
+        queue.async((context) -> done.countDown());
+        done.await();
+        long cost = System.nanoTime() - begin;
+        queue.awaitShutdown();
+        return cost;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.benchmark;
+
+import com.cxuy.framework.coroutine.DispatchQueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DispatchQueue吞吐量基准
+ * <p>
+ * 分别以1/4/16个生产者线程向串行队列与多工作线程队列提交任务，统计每秒完成的任务数。
+ * 运行方式：直接执行main方法，可通过参数指定每个生产者提交的任务数量。
+ */
+public class DispatchQueueThroughputBenchmark {
+    private static final int[] PRODUCERS = { 1, 4, 16 };
+    private static final int DEFAULT_TASKS_PER_PRODUCER = 200_000;
+    private static final int WORK_ITERATIONS = 64;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int tasksPerProducer = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASKS_PER_PRODUCER;
+        int workers = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        System.out.printf("%-12s %-10s %-14s %s%n", "mode", "producers", "tasks", "ops/s");
+        for(int producers : PRODUCERS) {
+            // 预热
+            run(new DispatchQueue.Builder().name("bench-serial").serial().build(), producers, tasksPerProducer / 4);
+            run(new DispatchQueue.Builder().name("bench-stealing").workers(workers).build(), producers, tasksPerProducer / 4);
+
+            long serial = run(new DispatchQueue.Builder().name("bench-serial").serial().build(), producers, tasksPerProducer);
+            print("serial", producers, tasksPerProducer, serial);
+            long stealing = run(new DispatchQueue.Builder().name("bench-stealing").workers(workers).build(), producers, tasksPerProducer);
+            print("stealing-" + workers, producers, tasksPerProducer, stealing);
+        }
+    }
+
+    private static long run(DispatchQueue queue, int producers, int tasksPerProducer) throws InterruptedException {
+        int total = producers * tasksPerProducer;
+        CountDownLatch done = new CountDownLatch(total);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for(int i = 0; i < producers; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for(int j = 0; j < tasksPerProducer; j++) {
+                    queue.async((context) -> {
+                        sink += work();
+                        done.countDown();
+                    });
+                }
+            }, "producer-" + i);
+            threads[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long cost = System.nanoTime() - begin;
+        queue.awaitShutdown();
+        return cost;
+    }
+
+    private static long work() {
+        long value = 0;
+        for(int i = 0; i < WORK_ITERATIONS; i++) {
+            value += i * 31L ^ value;
+        }
+        return value;
+    }
+
+    private static void print(String mode, int producers, int tasks, long costNanos) {
+        long total = (long) producers * tasks;
+        double opsPerSecond = total / (costNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        System.out.printf("%-12s %-10d %-14d %.0f%n", mode, producers, total, opsPerSecond);
+    }
+}
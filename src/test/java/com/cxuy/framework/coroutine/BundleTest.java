@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bundle的数组存储与封存后的写时复制
+ */
+public class BundleTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void primitivesKeepTheirType() {
+        Bundle bundle = new Bundle();
+        bundle.putInt("int", 1);
+        bundle.putLong("long", 2L);
+        bundle.putFloat("float", 3.5f);
+        bundle.putDouble("double", 4.25);
+        bundle.putBoolean("boolean", true);
+        bundle.putString("string", "value");
+        assertEquals(1, bundle.getInt("int", 0));
+        assertEquals(2L, bundle.getLong("long", 0));
+        assertEquals(3.5f, bundle.getFloat("float", 0));
+        assertEquals(4.25, bundle.getDouble("double", 0));
+        assertTrue(bundle.getBoolean("boolean", false));
+        assertEquals("value", bundle.getString("string"));
+        // 类型不符或不存在时返回默认值
+        assertEquals(-1, bundle.getInt("long", -1));
+        assertEquals(-1L, bundle.getLong("int", -1));
+        assertEquals(-1, bundle.getInt("missing", -1));
+        assertEquals("default", bundle.getString("int", "default"));
+        assertEquals(2L, bundle.getExtra("long"));
+        assertNull(bundle.getExtra("missing"));
+    }
+
+    @Test
+    public void putExtraStoresByRuntimeType() {
+        Bundle bundle = new Bundle();
+        Object list = List.of(1, 2);
+        bundle.putExtra("int", 1);
+        bundle.putExtra("double", 2.0);
+        bundle.putExtra("list", list);
+        assertEquals(1, bundle.getInt("int", 0));
+        assertEquals(2.0, bundle.getDouble("double", 0));
+        assertSame(list, bundle.getExtra("list"));
+    }
+
+    @Test
+    public void growsAndRemovesKeepingOtherEntries() {
+        Bundle bundle = new Bundle();
+        for(int i = 0; i < 100; i++) {
+            bundle.putInt("key" + i, i);
+        }
+        for(int i = 0; i < 100; i += 2) {
+            bundle.remove("key" + i);
+        }
+        bundle.putInt("key1", -1); // 覆盖已有的键不新增条目
+        for(int i = 0; i < 100; i++) {
+            String key = "key" + i;
+            if(i % 2 == 0) {
+                assertFalse(bundle.contains(key));
+            }
+            else {
+                assertEquals(i == 1 ? -1 : i, bundle.getInt(key, Integer.MIN_VALUE));
+            }
+        }
+        bundle.removeAll();
+        assertFalse(bundle.contains("key1"));
+    }
+
+    @Test
+    public void keysAreComparedByValue() {
+        Bundle bundle = new Bundle();
+        bundle.putString(new String("key"), "value");
+        assertEquals("value", bundle.getString(new String("key")));
+        assertTrue(bundle.contains("key"));
+        assertFalse(bundle.contains(null));
+    }
+
+    @Test
+    public void builderProducesSealedBundle() {
+        Bundle bundle = new Bundle.Builder(1).putInt("a", 1).putString("b", "b").putBoolean("c", true).build();
+        assertEquals(1, bundle.getInt("a", 0));
+        assertEquals("b", bundle.getString("b"));
+        assertTrue(bundle.getBoolean("c", false));
+        // 封存后仍可写入，写入替换整个存储
+        bundle.putInt("a", 2);
+        bundle.remove("b");
+        assertEquals(2, bundle.getInt("a", 0));
+        assertFalse(bundle.contains("b"));
+    }
+
+    @Test
+    public void sealedReadsSeeConsistentEntries() {
+        Bundle bundle = new Bundle();
+        bundle.putInt("fixed", 42);
+        bundle.seal();
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            AtomicInteger mismatches = new AtomicInteger();
+            Thread writer = new Thread(() -> {
+                // 在固定键之前反复增删，原地修改会使读取方看到移动中的数组
+                for(int i = 0; i < 20_000; i++) {
+                    bundle.putInt("temp" + (i & 7), i);
+                    bundle.remove("temp" + ((i + 3) & 7));
+                }
+            });
+            writer.start();
+            while(writer.isAlive()) {
+                if(bundle.getInt("fixed", -1) != 42) {
+                    mismatches.incrementAndGet();
+                }
+            }
+            writer.join();
+            assertEquals(0, mismatches.get());
+            assertEquals(42, bundle.getInt("fixed", -1));
+        });
+    }
+
+    @Test
+    public void taskReadsSubmittedBundle() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-bundle").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                Bundle bundle = new Bundle();
+                bundle.putLong("id", 7L);
+                AtomicLong read = new AtomicLong();
+                CountDownLatch done = new CountDownLatch(1);
+                queue.async(bundle, (context) -> {
+                    read.set(context.getBundle().getLong("id", 0));
+                    done.countDown();
+                });
+                done.await();
+                assertEquals(7L, read.get());
+                // 提交时已被封存，之后的写入照常生效
+                bundle.putLong("id", 8L);
+                assertEquals(8L, bundle.getLong("id", 0));
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DispatchFuture的链式调用与并行循环
+ */
+public class DispatchFutureTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void thenOnSwitchesQueueAndPropagatesFailure() {
+        DispatchQueue first = new DispatchQueue.Builder().name("test-future-first").build();
+        DispatchQueue second = new DispatchQueue.Builder().name("test-future-second").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchFuture<Integer> chained = first.submit(() -> 20)
+                        .thenOn(second, (value) -> value + 1)
+                        .thenComposeOn(first, (value) -> second.submit(() -> value * 2));
+                assertEquals(42, chained.get());
+
+                AtomicInteger skipped = new AtomicInteger();
+                DispatchFuture<Integer> failed = first.<Integer>submit(() -> {
+                    throw new IllegalStateException("boom");
+                }).thenOn(second, (value) -> skipped.incrementAndGet());
+                ExecutionException error = assertThrows(ExecutionException.class, failed::get);
+                assertInstanceOf(IllegalStateException.class, error.getCause());
+                assertEquals(0, skipped.get());
+            });
+        }
+        finally {
+            first.awaitShutdown();
+            second.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void errorInContinuationFailsFuture() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-future-error").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchFuture<Integer> failed = queue.submit(() -> 1).thenOn(queue, (value) -> {
+                    throw new DispatchQueueTest.TestError();
+                });
+                ExecutionException error = assertThrows(ExecutionException.class, failed::get);
+                assertInstanceOf(DispatchQueueTest.TestError.class, error.getCause());
+                assertEquals(2, queue.submit(() -> 2).get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void cancelIsStageLocal() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-future-cancel").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = new CountDownLatch(1);
+                DispatchFuture<Integer> upstream = queue.submit(() -> {
+                    DispatchQueueTest.await(release);
+                    return 1;
+                });
+                DispatchFuture<Integer> downstream = upstream.thenOn(queue, (value) -> value + 1);
+                assertTrue(downstream.cancel());
+                release.countDown();
+                assertEquals(1, upstream.get());
+                assertTrue(downstream.isCancelled());
+                assertThrows(CancellationException.class, downstream::get);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void cancelPendingSubmitSkipsCallable() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-future-cancel-pending").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger called = new AtomicInteger();
+                DispatchFuture<Integer> future = queue.submit(1000, called::incrementAndGet);
+                assertTrue(future.cancel());
+                assertTrue(future.getContext().isCancel());
+                assertThrows(CancellationException.class, future::get);
+                assertEquals(0, called.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void shutdownCancelsPendingSubmit() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-future-shutdown").build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                AtomicInteger called = new AtomicInteger();
+                DispatchFuture<Integer> now = queue.submit(called::incrementAndGet);
+                DispatchFuture<Integer> delayed = queue.submit(1000, called::incrementAndGet);
+                queue.shutdown();
+                release.countDown();
+                assertThrows(CancellationException.class, now::get);
+                assertThrows(CancellationException.class, delayed::get);
+                assertEquals(0, called.get());
+            });
+        }
+        finally {
+            release.countDown();
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void ofCompletionStageUnwrapsFailure() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CompletableFuture<Integer> stage = new CompletableFuture<>();
+            DispatchFuture<Integer> future = DispatchFuture.of(stage.thenApply((value) -> value));
+            assertFalse(future.isDone());
+            stage.completeExceptionally(new IllegalArgumentException("boom"));
+            ExecutionException error = assertThrows(ExecutionException.class, future::get);
+            assertInstanceOf(IllegalArgumentException.class, error.getCause());
+            assertEquals(3, DispatchFuture.of(CompletableFuture.completedFuture(3)).get());
+        });
+    }
+
+    @Test
+    public void parallelMapKeepsOrder() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-parallel-map").workers(4).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<Integer> input = IntStream.range(0, 10_000).boxed().collect(Collectors.toList());
+                List<Integer> output = queue.parallelMap(input, (value) -> value * 2).get();
+                assertEquals(input.size(), output.size());
+                for(int i = 0; i < output.size(); i++) {
+                    assertEquals(i * 2, output.get(i));
+                }
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void parallelForFailsOnException() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-parallel-exception").workers(4).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchFuture<Void> future = queue.parallelFor(0, 1000, 10, (index) -> {
+                    if(index == 500) {
+                        throw new IllegalStateException("boom");
+                    }
+                });
+                ExecutionException error = assertThrows(ExecutionException.class, future::get);
+                assertInstanceOf(IllegalStateException.class, error.getCause());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void parallelForFailsOnError() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-parallel-error").workers(4).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchFuture<Void> future = queue.parallelFor(0, 1000, 10, (index) -> {
+                    if(index == 500) {
+                        throw new DispatchQueueTest.TestError();
+                    }
+                });
+                ExecutionException error = assertThrows(ExecutionException.class, future::get);
+                assertInstanceOf(DispatchQueueTest.TestError.class, error.getCause());
+                // 工作线程因Error退出后队列仍可继续使用
+                AtomicInteger sum = new AtomicInteger();
+                queue.parallelFor(0, 100, (index) -> sum.addAndGet(index)).get();
+                assertEquals(4950, sum.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void parallelForFailsWhenQueueShutsDown() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-parallel-shutdown").build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                AtomicInteger executed = new AtomicInteger();
+                DispatchFuture<Void> future = queue.parallelFor(0, 100, 10, (index) -> executed.incrementAndGet());
+                queue.shutdown();
+                release.countDown();
+                assertThrows(CancellationException.class, future::get);
+                assertEquals(0, executed.get());
+            });
+        }
+        finally {
+            release.countDown();
+            queue.awaitShutdown();
+        }
+    }
+}
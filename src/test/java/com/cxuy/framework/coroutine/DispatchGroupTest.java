@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * DispatchGroup的汇合通知
+ */
+public class DispatchGroupTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void notifyRunsAfterAllTasks() {
+        DispatchQueue workers = new DispatchQueue.Builder().name("test-group-workers").workers(4).build();
+        DispatchQueue notifyQueue = new DispatchQueue.Builder().name("test-group-notify").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchGroup group = new DispatchGroup();
+                AtomicInteger executed = new AtomicInteger();
+                for(int i = 0; i < 100; i++) {
+                    group.async(workers, (context) -> executed.incrementAndGet());
+                }
+                int[] seen = new int[1];
+                CountDownLatch notified = new CountDownLatch(1);
+                group.notify(notifyQueue, (context) -> {
+                    seen[0] = executed.get();
+                    notified.countDown();
+                });
+                notified.await();
+                assertEquals(100, seen[0]);
+            });
+        }
+        finally {
+            workers.awaitShutdown();
+            notifyQueue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void notifyStillFiresWhenSubmitFails() {
+        DispatchQueue alive = new DispatchQueue.Builder().name("test-group-alive").build();
+        DispatchQueue destroyed = new DispatchQueue.Builder().name("test-group-destroyed").build();
+        destroyed.awaitShutdown();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchGroup group = new DispatchGroup();
+                AtomicInteger executed = new AtomicInteger();
+                group.async(destroyed, (context) -> executed.incrementAndGet());
+                group.async(alive, (context) -> executed.incrementAndGet());
+                group.async(destroyed, (context) -> executed.incrementAndGet());
+                CountDownLatch notified = new CountDownLatch(1);
+                DispatchQueue.DispatcherQueueHasDestroyedException failure = assertThrows(
+                        DispatchQueue.DispatcherQueueHasDestroyedException.class,
+                        () -> group.notify(alive, (context) -> notified.countDown()));
+                assertEquals(1, failure.getSuppressed().length);
+                notified.await();
+                assertEquals(1, executed.get());
+            });
+        }
+        finally {
+            alive.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void notifyStillFiresWhenTasksAreDiscarded() {
+        DispatchQueue alive = new DispatchQueue.Builder().name("test-group-notify").build();
+        DispatchQueue closing = new DispatchQueue.Builder().name("test-group-closing").build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                closing.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                DispatchGroup group = new DispatchGroup();
+                AtomicInteger executed = new AtomicInteger();
+                for(int i = 0; i < 3; i++) {
+                    group.async(closing, (context) -> executed.incrementAndGet());
+                }
+                group.async(alive, (context) -> executed.incrementAndGet());
+                CountDownLatch notified = new CountDownLatch(1);
+                group.notify(alive, (context) -> notified.countDown());
+                // 队列销毁时丢弃的任务视为已离开任务组
+                closing.shutdown();
+                release.countDown();
+                notified.await();
+                assertEquals(1, executed.get());
+            });
+        }
+        finally {
+            release.countDown();
+            closing.awaitShutdown();
+            alive.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void manualLeaveCountsEarlyLeaves() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-group-leave").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchGroup group = new DispatchGroup(false);
+                group.async(queue, (context) -> {  });
+                group.async(queue, (context) -> {  });
+                group.leave(); // 提交前离开
+                CountDownLatch notified = new CountDownLatch(1);
+                group.notify(queue, (context) -> notified.countDown());
+                group.leave();
+                notified.await();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void parallelForJoinsAllChunks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-group-parallel").workers(4).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchGroup group = new DispatchGroup();
+                AtomicInteger sum = new AtomicInteger();
+                int chunks = group.parallelFor(queue, 0, 1000, 100, sum::addAndGet);
+                assertEquals(10, chunks);
+                CountDownLatch notified = new CountDownLatch(1);
+                group.notify(queue, (context) -> notified.countDown());
+                notified.await();
+                assertEquals(499_500, sum.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DispatchQueue运行指标的计数、耗时分布与定期上报
+ */
+public class DispatchMetricsTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void countsEveryOutcome() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-outcome").metrics(true).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                for(int i = 0; i < 5; i++) {
+                    queue.async((context) -> { });
+                }
+                for(int i = 0; i < 2; i++) {
+                    queue.async((context) -> {
+                        throw new IllegalStateException("expected by test");
+                    });
+                }
+                queue.async(TimeUnit.HOURS.toMillis(1), (context) -> { }).cancel();
+                awaitFinished(queue, 7);
+                DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+                assertEquals(8L, snapshot.submitted);
+                assertEquals(5L, snapshot.completed);
+                assertEquals(2L, snapshot.failed);
+                assertEquals(1L, snapshot.cancelled);
+                assertEquals(0L, snapshot.rejected);
+                assertEquals(0L, snapshot.depth);
+                assertEquals(7L, snapshot.waitTime.count);
+                assertEquals(7L, snapshot.runTime.count);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void countsRejectedAndPendingDepth() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-depth").metrics(true)
+                .capacity(3, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                for(int i = 0; i < 3; i++) {
+                    assertNotNull(queue.tryAsync((context) -> { }));
+                }
+                assertNull(queue.tryAsync((context) -> { }));
+                DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+                assertEquals(3L, snapshot.depth);
+                assertEquals(1L, snapshot.rejected);
+                release.countDown();
+                awaitFinished(queue, 4);
+                assertEquals(0L, queue.snapshotMetrics().depth);
+            });
+        }
+        finally {
+            release.countDown();
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void idleTasksAreNotCounted() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-idle").metrics(true).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch idle = new CountDownLatch(1);
+                queue.async((context) -> { });
+                queue.addIdle((context) -> idle.countDown());
+                idle.await();
+                awaitFinished(queue, 1);
+                assertEquals(1L, queue.snapshotMetrics().submitted);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void runTimeReflectsTaskDuration() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-histogram").metrics(true).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                long sleepNanos = TimeUnit.MILLISECONDS.toNanos(20);
+                for(int i = 0; i < 5; i++) {
+                    queue.async((context) -> {
+                        try {
+                            Thread.sleep(20);
+                        }
+                        catch(InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+                awaitFinished(queue, 5);
+                DispatchMetrics.Histogram runTime = queue.snapshotMetrics().runTime;
+                assertEquals(5L, runTime.count);
+                assertTrue(runTime.mean() >= sleepNanos);
+                // 分位数取档位下界，相对误差不超过25%
+                long p50 = runTime.percentile(50);
+                assertTrue(p50 >= sleepNanos * 3 / 4, "p50=" + p50);
+                assertTrue(p50 <= runTime.max);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void listenerReceivesPeriodicSnapshots() throws InterruptedException {
+        CountDownLatch reported = new CountDownLatch(3);
+        List<DispatchMetrics.Snapshot> snapshots = new CopyOnWriteArrayList<>();
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-report")
+                .metrics(20, TimeUnit.MILLISECONDS, (target, snapshot) -> {
+                    snapshots.add(snapshot);
+                    reported.countDown();
+                }).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                queue.async((context) -> { });
+                reported.await();
+                assertEquals("test-metrics-report", snapshots.get(0).name);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+        // 队列销毁后不再上报，至多还有一次已在进行中的上报
+        int count = snapshots.size();
+        Thread.sleep(100);
+        assertTrue(snapshots.size() <= count + 1);
+    }
+
+    @Test
+    public void disabledMetricsReturnNull() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-metrics-disabled").build();
+        try {
+            assertNull(queue.snapshotMetrics());
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    /**
+     * 完成计数在任务返回后才更新，需等待其追上
+     */
+    private static void awaitFinished(DispatchQueue queue, long count) throws InterruptedException {
+        while(true) {
+            DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+            if(snapshot.completed + snapshot.failed >= count) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+    }
+}
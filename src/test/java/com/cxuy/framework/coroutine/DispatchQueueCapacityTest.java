@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 有界队列的名额统计
+ * <p>
+ * 每个用例先用一个阻塞的任务占住执行线程，使后续提交全部停留在等待状态，
+ * 再检查开始执行、取消与关闭队列时名额是否都被如数释放。
+ */
+public class DispatchQueueCapacityTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void failFastRejectsUntilSlotReleased() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-fail-fast").metrics(true)
+                .capacity(2, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = block(queue);
+                AtomicInteger executed = new AtomicInteger();
+                DispatchContext first = queue.async((context) -> executed.incrementAndGet());
+                queue.async((context) -> executed.incrementAndGet());
+                assertNull(queue.tryAsync((context) -> executed.incrementAndGet()));
+                assertThrows(DispatchQueue.DispatcherQueueIsFullException.class, () -> queue.async((context) -> executed.incrementAndGet()));
+
+                first.cancel(); // 取消同步释放名额
+                assertNotNull(queue.tryAsync((context) -> executed.incrementAndGet()));
+                assertNull(queue.tryAsync((context) -> executed.incrementAndGet()));
+
+                release.countDown();
+                awaitSettled(queue);
+                assertEquals(2, executed.get());
+                // 全部执行完毕后名额应完全恢复
+                assertNotNull(queue.tryAsync((context) -> executed.incrementAndGet()));
+                assertNotNull(queue.tryAsync((context) -> executed.incrementAndGet()));
+                awaitSettled(queue);
+                assertEquals(4, executed.get());
+
+                DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+                assertEquals(3, snapshot.rejected);
+                assertEquals(1, snapshot.cancelled);
+                assertEquals(6, snapshot.submitted);
+                assertEquals(5, snapshot.completed);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void dropOldestCancelsEarliestPendingTask() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-drop-oldest").metrics(true)
+                .capacity(2, DispatchQueue.OverflowPolicy.DROP_OLDEST).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = block(queue);
+                List<Integer> executed = new ArrayList<>();
+                DispatchContext[] contexts = new DispatchContext[4];
+                for(int i = 0; i < contexts.length; i++) {
+                    int index = i;
+                    contexts[i] = queue.async((context) -> executed.add(index));
+                }
+                assertTrue(contexts[0].isCancel());
+                assertTrue(contexts[1].isCancel());
+                assertFalse(contexts[2].isCancel());
+                assertFalse(contexts[3].isCancel());
+
+                release.countDown();
+                awaitSettled(queue);
+                assertEquals(List.of(2, 3), executed);
+                DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+                assertEquals(2, snapshot.cancelled);
+                assertEquals(0, snapshot.rejected);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void blockWaitsForReleasedSlot() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-block").metrics(true)
+                .capacity(1, DispatchQueue.OverflowPolicy.BLOCK).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = block(queue);
+                DispatchContext pending = queue.async((context) -> {  });
+                CountDownLatch submitted = new CountDownLatch(1);
+                Thread submitter = new Thread(() -> {
+                    queue.async((context) -> {  });
+                    submitted.countDown();
+                });
+                submitter.start();
+                assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+
+                pending.cancel();
+                submitted.await();
+                release.countDown();
+                awaitSettled(queue);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void shutdownWakesBlockedSubmitter() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-block-shutdown")
+                .capacity(1, DispatchQueue.OverflowPolicy.BLOCK).build();
+        CountDownLatch[] release = new CountDownLatch[1];
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                release[0] = block(queue);
+                queue.async((context) -> {  });
+                AtomicReference<Throwable> failure = new AtomicReference<>();
+                Thread submitter = new Thread(() -> {
+                    try {
+                        queue.async((context) -> {  });
+                    }
+                    catch(Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                submitter.start();
+                while(submitter.getState() != Thread.State.WAITING) {
+                    Thread.sleep(1);
+                }
+                queue.shutdown();
+                submitter.join();
+                assertInstanceOf(DispatchQueue.DispatcherQueueHasDestroyedException.class, failure.get());
+            });
+        }
+        finally {
+            if(release[0] != null) {
+                release[0].countDown();
+            }
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void stealingShutdownCancelsLeftoverTasks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-stealing-leftover").workers(2).metrics(true)
+                .capacity(64, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        assertLeftoversCancelled(queue, 2);
+    }
+
+    @Test
+    public void virtualThreadShutdownCancelsLeftoverTasks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-virtual-leftover").coroutine(true)
+                .virtualThreads(1).metrics(true).capacity(64, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        assertLeftoversCancelled(queue, 1);
+    }
+
+    @Test
+    public void idleTasksDoNotOccupySlots() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-idle-slot").metrics(true)
+                .capacity(1, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = block(queue);
+                queue.addIdle((context) -> {  });
+                assertNotNull(queue.tryAsync((context) -> {  }));
+                release.countDown();
+                awaitSettled(queue);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    /**
+     * 占住全部执行线程，返回放行的门闩
+     */
+    private static CountDownLatch block(DispatchQueue queue) throws InterruptedException {
+        return block(queue, 1);
+    }
+
+    private static CountDownLatch block(DispatchQueue queue, int threads) throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(threads);
+        for(int i = 0; i < threads; i++) {
+            queue.async((context) -> {
+                started.countDown();
+                DispatchQueueTest.await(release);
+            });
+        }
+        started.await();
+        return release;
+    }
+
+    /**
+     * 等待已提交的任务全部执行完毕或被取消，此后不再有任务占用名额
+     */
+    private static void awaitSettled(DispatchQueue queue) throws InterruptedException {
+        while(true) {
+            DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+            if(snapshot.depth == 0 && snapshot.submitted == snapshot.completed + snapshot.failed + snapshot.cancelled) {
+                return;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertLeftoversCancelled(DispatchQueue queue, int threads) {
+        CountDownLatch[] release = new CountDownLatch[1];
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                release[0] = block(queue, threads);
+                AtomicInteger executed = new AtomicInteger();
+                List<DispatchContext> contexts = new ArrayList<>();
+                for(int i = 0; i < 10; i++) {
+                    contexts.add(queue.async((context) -> executed.incrementAndGet()));
+                }
+                queue.shutdown();
+                // 分发线程上的剩余任务由其自行丢弃，不一定在shutdown返回前完成
+                while(queue.snapshotMetrics().cancelled < 10) {
+                    Thread.sleep(1);
+                }
+                release[0].countDown();
+                awaitSettled(queue);
+                assertEquals(0, executed.get());
+                assertEquals(10, queue.snapshotMetrics().cancelled);
+                for(DispatchContext context : contexts) {
+                    assertTrue(context.isCancel());
+                }
+            });
+        }
+        finally {
+            if(release[0] != null) {
+                release[0].countDown();
+            }
+            queue.awaitShutdown();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import com.cxuy.framework.util.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 周期任务的调度、取消，以及与空闲状态、运行指标、慢任务检测的配合
+ */
+public class DispatchQueuePeriodicTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void fixedRateKeepsSchedule() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-rate").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<Long> ticks = new CopyOnWriteArrayList<>();
+                CountDownLatch done = new CountDownLatch(10);
+                long begin = System.nanoTime();
+                DispatchContext context = queue.scheduleAtFixedRate(0, 20, (ctx) -> {
+                    ticks.add(System.nanoTime());
+                    done.countDown();
+                });
+                done.await();
+                context.cancel();
+                // 第n次执行不早于 n * period
+                for(int i = 0; i < 10; i++) {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(ticks.get(i) - begin);
+                    assertTrue(elapsed >= i * 20L - 1, "tick " + i + " at " + elapsed + "ms");
+                }
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void fixedDelayWaitsAfterEachRun() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-delay").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<Long> starts = new CopyOnWriteArrayList<>();
+                CountDownLatch done = new CountDownLatch(4);
+                DispatchContext context = queue.scheduleWithFixedDelay(0, 20, (ctx) -> {
+                    starts.add(System.nanoTime());
+                    sleep(30);
+                    done.countDown();
+                });
+                done.await();
+                context.cancel();
+                // 两次开始之间至少间隔执行耗时与固定间隔之和
+                for(int i = 1; i < 4; i++) {
+                    long gap = TimeUnit.NANOSECONDS.toMillis(starts.get(i) - starts.get(i - 1));
+                    assertTrue(gap >= 49, "gap " + i + " is " + gap + "ms");
+                }
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void cancelStopsFurtherTicks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-cancel").workers(2).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger ticks = new AtomicInteger();
+                CountDownLatch started = new CountDownLatch(3);
+                DispatchContext context = queue.scheduleAtFixedRate(0, 10, (ctx) -> {
+                    ticks.incrementAndGet();
+                    started.countDown();
+                });
+                started.await();
+                context.cancel();
+                Thread.sleep(30); // 取消时可能有一次正在执行
+                int count = ticks.get();
+                Thread.sleep(100);
+                assertEquals(count, ticks.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void exceptionDoesNotStopTicks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-exception").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger ticks = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(3);
+                DispatchContext context = queue.scheduleWithFixedDelay(0, 10, (ctx) -> {
+                    done.countDown();
+                    if(ticks.incrementAndGet() == 1) {
+                        throw new IllegalStateException("expected by test");
+                    }
+                });
+                done.await();
+                context.cancel();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void idleTasksRunBetweenTicks() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-idle").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch ticked = new CountDownLatch(1);
+                DispatchContext context = queue.scheduleAtFixedRate(0, 50, (ctx) -> ticked.countDown());
+                ticked.await();
+                // 等待下一次执行的周期任务不占用队列，队列保持空闲
+                while(queue.getStatus() != DispatchQueue.Status.IDLE) {
+                    Thread.sleep(1);
+                }
+                CountDownLatch idle = new CountDownLatch(1);
+                queue.addIdle((ctx) -> idle.countDown());
+                idle.await();
+                assertEquals(DispatchQueue.Status.IDLE, queue.getStatus());
+                context.cancel();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void ticksAreMeasured() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-metrics").metrics(true).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch done = new CountDownLatch(3);
+                DispatchContext context = queue.scheduleAtFixedRate(0, 10, (ctx) -> done.countDown());
+                done.await();
+                context.cancel();
+                // 每次执行计为一个任务
+                while(queue.snapshotMetrics().completed < 3) {
+                    Thread.sleep(1);
+                }
+                DispatchMetrics.Snapshot snapshot = queue.snapshotMetrics();
+                assertTrue(snapshot.submitted >= 3);
+                assertEquals(snapshot.completed, snapshot.runTime.count);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void slowTickIsReported() {
+        String name = "test-periodic-watchdog";
+        CountDownLatch reported = new CountDownLatch(1);
+        Logger.Handler handler = (level, tag, message, throwable) -> {
+            if("DispatchWatchdog".equals(tag) && message.startsWith("slow task detected") && message.contains("queue=" + name + ",")) {
+                reported.countDown();
+            }
+        };
+        Logger.addHandler(handler);
+        DispatchQueue queue = new DispatchQueue.Builder().name(name).watchdog(30, TimeUnit.MILLISECONDS).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchContext context = queue.scheduleWithFixedDelay(0, 10, (ctx) -> sleep(100));
+                reported.await();
+                context.cancel();
+            });
+        }
+        finally {
+            Logger.removeHandler(handler);
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void shutdownCancelsPeriodicTask() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-periodic-shutdown").build();
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            DispatchContext context = queue.scheduleAtFixedRate(TimeUnit.HOURS.toMillis(1), 1000, (ctx) -> { });
+            queue.awaitShutdown();
+            assertTrue(context.isCancel());
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
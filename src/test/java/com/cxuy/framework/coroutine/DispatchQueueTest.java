@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DispatchQueue的分发、唤醒与异常处理
+ * <p>
+ * 唤醒相关的用例以大量短小的提交-休眠循环放大竞争窗口，丢失唤醒时表现为超时。
+ */
+public class DispatchQueueTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int PRODUCERS = 8;
+    private static final int TASKS_PER_PRODUCER = 20_000;
+    private static final int ROUNDS = 2_000;
+
+    @Test
+    public void errorFailsFutureAndSerialQueueSurvives() {
+        assertQueueSurvivesError(new DispatchQueue.Builder().name("test-error-serial").build());
+    }
+
+    @Test
+    public void errorFailsFutureAndStealingQueueSurvives() {
+        assertQueueSurvivesError(new DispatchQueue.Builder().name("test-error-stealing").workers(4).build());
+    }
+
+    @Test
+    public void errorFailsFutureAndCoroutineQueueSurvives() {
+        assertQueueSurvivesError(new DispatchQueue.Builder().name("test-error-coroutine").coroutine(true).build());
+    }
+
+    @Test
+    public void errorInPlainTaskDoesNotStopSerialQueue() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-error-task").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                queue.async((context) -> {
+                    throw new TestError();
+                });
+                CountDownLatch done = new CountDownLatch(1);
+                queue.async((context) -> done.countDown());
+                done.await();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void serialQueueWakesUpAcrossManyProducers() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-wakeup-serial")
+                .keepAlive(0, TimeUnit.MILLISECONDS).spin(0, TimeUnit.MILLISECONDS).build();
+        assertAllProducersComplete(queue);
+    }
+
+    @Test
+    public void dormantSerialQueueWakesUpAcrossManyProducers() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-wakeup-dormant")
+                .keepAlive(50, TimeUnit.MILLISECONDS).spin(0, TimeUnit.MILLISECONDS).build();
+        assertAllProducersComplete(queue);
+    }
+
+    @Test
+    public void stealingQueueWakesUpAcrossManyProducers() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-wakeup-stealing").workers(4)
+                .keepAlive(0, TimeUnit.MILLISECONDS).spin(0, TimeUnit.MILLISECONDS).build();
+        assertAllProducersComplete(queue);
+    }
+
+    @Test
+    public void submitAndParkCyclesNeverLoseWakeup() {
+        assertSubmitParkCycles(new DispatchQueue.Builder().name("test-cycle-exit")
+                .keepAlive(0, TimeUnit.MILLISECONDS).spin(0, TimeUnit.MILLISECONDS).build());
+        assertSubmitParkCycles(new DispatchQueue.Builder().name("test-cycle-park")
+                .keepAlive(1, TimeUnit.SECONDS).spin(0, TimeUnit.MILLISECONDS).build());
+        assertSubmitParkCycles(new DispatchQueue.Builder().name("test-cycle-stealing").workers(2)
+                .keepAlive(0, TimeUnit.MILLISECONDS).spin(0, TimeUnit.MILLISECONDS).build());
+    }
+
+    @Test
+    public void delayedTasksRunInOrderOnBothTimers() {
+        for(DispatchQueue.TimerType type : DispatchQueue.TimerType.values()) {
+            DispatchQueue queue = new DispatchQueue.Builder().name("test-delay-" + type).timer(type).build();
+            try {
+                assertTimeoutPreemptively(TIMEOUT, () -> {
+                    List<Integer> order = new CopyOnWriteArrayList<>();
+                    CountDownLatch done = new CountDownLatch(3);
+                    queue.async(60, (context) -> { order.add(3); done.countDown(); });
+                    queue.async(20, (context) -> { order.add(1); done.countDown(); });
+                    queue.async(40, (context) -> { order.add(2); done.countDown(); });
+                    DispatchContext cancelled = queue.async(30, (context) -> order.add(-1));
+                    cancelled.cancel();
+                    done.await();
+                    assertEquals(List.of(1, 2, 3), order);
+                });
+            }
+            finally {
+                queue.awaitShutdown();
+            }
+        }
+    }
+
+    @Test
+    public void stealingQueueReturnsToIdleAfterTasksFinish() {
+        List<DispatchQueue.Status> statuses = new CopyOnWriteArrayList<>();
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-stealing-status").workers(4)
+                .keepAlive(200, TimeUnit.MILLISECONDS).build();
+        queue.addStatusObserver((target, status) -> statuses.add(status));
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(16);
+                for(int i = 0; i < 16; i++) {
+                    queue.async((context) -> {
+                        await(release);
+                        done.countDown();
+                    });
+                }
+                assertEquals(DispatchQueue.Status.BUSY, queue.getStatus());
+                release.countDown();
+                done.await();
+                while(queue.getStatus() == DispatchQueue.Status.BUSY) {
+                    Thread.sleep(1);
+                }
+                assertTrue(statuses.contains(DispatchQueue.Status.BUSY));
+                assertNotEquals(DispatchQueue.Status.DESTROY, queue.getStatus());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void highPriorityOvertakesBackgroundBacklog() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-priority").batchSize(1).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    await(release);
+                });
+                started.await();
+                AtomicInteger backgroundRun = new AtomicInteger();
+                int[] backgroundBeforeHigh = new int[1];
+                CountDownLatch done = new CountDownLatch(101);
+                for(int i = 0; i < 100; i++) {
+                    queue.asyncWithPriority(DispatchQueue.Priority.BACKGROUND, (context) -> {
+                        backgroundRun.incrementAndGet();
+                        done.countDown();
+                    });
+                }
+                queue.asyncWithPriority(DispatchQueue.Priority.HIGH, (context) -> {
+                    backgroundBeforeHigh[0] = backgroundRun.get();
+                    done.countDown();
+                });
+                release.countDown();
+                done.await();
+                assertTrue(backgroundBeforeHigh[0] < 100, "high priority task waited for the whole backlog");
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void cancelAllCancelsTaggedTasksOnly() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-tag").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger tagged = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(1);
+                for(int i = 0; i < 10; i++) {
+                    queue.asyncTagged("tag", 50, (context) -> tagged.incrementAndGet());
+                }
+                queue.async(100, (context) -> done.countDown());
+                assertEquals(10, queue.cancelAll("tag"));
+                done.await();
+                assertEquals(0, tagged.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void cancelWakesWorkerParkedOnLongDelay() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cancel-wake").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                for(int i = 0; i < ROUNDS; i++) {
+                    DispatchContext context = queue.async(TimeUnit.HOURS.toMillis(1), (ctx) -> { });
+                    while(queue.getStatus() != DispatchQueue.Status.BUSY) {
+                        Thread.onSpinWait();
+                    }
+                    context.cancel();
+                    // 唯一的延时任务被取消后，分发线程应立即醒来并切换至空闲，而不是等到原定的到期时间
+                    while(queue.getStatus() == DispatchQueue.Status.BUSY) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void reusableIdleTaskStopsAfterCancel() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-idle").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger runs = new AtomicInteger();
+                CountDownLatch twice = new CountDownLatch(2);
+                DispatchContext[] idle = new DispatchContext[1];
+                idle[0] = queue.async(new DispatchQueue.IDLETask() {
+                    @Override
+                    public boolean reuse() {
+                        return true;
+                    }
+
+                    @Override
+                    public void run(DispatchContext context) {
+                        runs.incrementAndGet();
+                        twice.countDown();
+                        if(twice.getCount() == 0) {
+                            context.cancel();
+                        }
+                    }
+                });
+                twice.await();
+                // 再次触发idle，已取消的任务不再执行
+                CountDownLatch done = new CountDownLatch(1);
+                queue.async((context) -> done.countDown());
+                done.await();
+                Thread.sleep(50);
+                assertEquals(2, runs.get());
+                assertTrue(idle[0].isCancel());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void submitAfterShutdownThrows() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-destroyed").build();
+        queue.awaitShutdown();
+        assertThrows(DispatchQueue.DispatcherQueueHasDestroyedException.class, () -> queue.async((context) -> {  }));
+    }
+
+    private static void assertQueueSurvivesError(DispatchQueue queue) {
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                DispatchFuture<Integer> failed = queue.submit(() -> {
+                    throw new TestError();
+                });
+                ExecutionException error = assertThrows(ExecutionException.class, failed::get);
+                assertInstanceOf(TestError.class, error.getCause());
+                assertEquals(1, queue.submit(() -> 1).get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    private static void assertAllProducersComplete(DispatchQueue queue) {
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger executed = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(PRODUCERS * TASKS_PER_PRODUCER);
+                Thread[] producers = new Thread[PRODUCERS];
+                for(int i = 0; i < PRODUCERS; i++) {
+                    producers[i] = new Thread(() -> {
+                        for(int j = 0; j < TASKS_PER_PRODUCER; j++) {
+                            queue.async((context) -> {
+                                executed.incrementAndGet();
+                                done.countDown();
+                            });
+                            if(j % 1000 == 0) { // 留出让分发线程休眠的间隙
+                                Thread.yield();
+                            }
+                        }
+                    });
+                    producers[i].start();
+                }
+                for(Thread producer : producers) {
+                    producer.join();
+                }
+                done.await();
+                assertEquals(PRODUCERS * TASKS_PER_PRODUCER, executed.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    private static void assertSubmitParkCycles(DispatchQueue queue) {
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                for(int i = 0; i < ROUNDS; i++) {
+                    int expected = i;
+                    assertEquals(expected, queue.submit(() -> expected).get());
+                }
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class TestError extends Error {
+        private static final long serialVersionUID = 1L;
+
+        TestError() {
+            super("test error");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import com.cxuy.framework.util.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 慢任务检测的报告内容与触发条件
+ * <p>
+ * 通过Logger的处理器收集报告，处理器为全局共享，按队列名过滤。
+ */
+public class DispatchWatchdogTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void slowTaskIsReportedWithSubmitSite() {
+        String name = "test-watchdog-slow";
+        List<Report> reports = new CopyOnWriteArrayList<>();
+        Logger.Handler handler = collect(name, reports);
+        DispatchQueue queue = new DispatchQueue.Builder().name(name).watchdog(50, TimeUnit.MILLISECONDS).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch done = new CountDownLatch(1);
+                queue.async((context) -> {
+                    sleep(300);
+                    done.countDown();
+                });
+                done.await();
+                while(reports.size() < 2) {
+                    Thread.sleep(1);
+                }
+                Report detected = reports.get(0);
+                assertTrue(detected.message.startsWith("slow task detected"), detected.message);
+                assertNotNull(detected.throwable);
+                // 异常的堆栈为任务执行时工作线程的堆栈，原因为任务的提交位置
+                assertTrue(containsMethod(detected.throwable, "sleep"));
+                assertNotNull(detected.throwable.getCause());
+                assertTrue(containsMethod(detected.throwable.getCause(), "lambda$slowTaskIsReportedWithSubmitSite"));
+                Report finished = reports.get(1);
+                assertTrue(finished.message.startsWith("slow task finished"), finished.message);
+                assertEquals(2, reports.size());
+            });
+        }
+        finally {
+            Logger.removeHandler(handler);
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void fastTaskIsNotReported() {
+        String name = "test-watchdog-fast";
+        List<Report> reports = new CopyOnWriteArrayList<>();
+        Logger.Handler handler = collect(name, reports);
+        DispatchQueue queue = new DispatchQueue.Builder().name(name).watchdog(200, TimeUnit.MILLISECONDS).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch done = new CountDownLatch(20);
+                for(int i = 0; i < 20; i++) {
+                    queue.async((context) -> {
+                        sleep(5);
+                        done.countDown();
+                    });
+                }
+                done.await();
+                Thread.sleep(300); // 留出至少一个检查周期
+                assertTrue(reports.isEmpty());
+            });
+        }
+        finally {
+            Logger.removeHandler(handler);
+            queue.awaitShutdown();
+        }
+    }
+
+    private static Logger.Handler collect(String queueName, List<Report> reports) {
+        Logger.Handler handler = (level, tag, message, throwable) -> {
+            if(level == Logger.Level.WARN && "DispatchWatchdog".equals(tag) && message.contains("queue=" + queueName + ",")) {
+                reports.add(new Report(message, throwable));
+            }
+        };
+        Logger.addHandler(handler);
+        return handler;
+    }
+
+    private static boolean containsMethod(Throwable throwable, String method) {
+        for(StackTraceElement element : throwable.getStackTrace()) {
+            if(element.getMethodName().startsWith(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Report {
+        private final String message;
+        private final Throwable throwable;
+
+        private Report(String message, Throwable throwable) {
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+}
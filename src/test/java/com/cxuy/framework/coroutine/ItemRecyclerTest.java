@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 任务项对象池的环形队列
+ */
+public class ItemRecyclerTest {
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(0, new ItemRecycler<Object>(0).capacity());
+        assertEquals(0, new ItemRecycler<Object>(-1).capacity());
+        assertEquals(1, new ItemRecycler<Object>(1).capacity());
+        assertEquals(4, new ItemRecycler<Object>(3).capacity());
+        assertEquals(64, new ItemRecycler<Object>(64).capacity());
+    }
+
+    @Test
+    public void zeroCapacityCachesNothing() {
+        ItemRecycler<Object> recycler = new ItemRecycler<>(0);
+        assertFalse(recycler.offer(new Object()));
+        assertNull(recycler.poll());
+    }
+
+    @Test
+    public void offerFailsWhenFullAndWrapsAround() {
+        ItemRecycler<Integer> recycler = new ItemRecycler<>(4);
+        for(int round = 0; round < 10; round++) {
+            for(int i = 0; i < 4; i++) {
+                assertTrue(recycler.offer(round * 4 + i));
+            }
+            assertFalse(recycler.offer(-1));
+            for(int i = 0; i < 4; i++) {
+                assertEquals(round * 4 + i, recycler.poll());
+            }
+            assertNull(recycler.poll());
+        }
+    }
+
+    @Test
+    public void concurrentOfferAndPollNeverDuplicates() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ItemRecycler<Object> recycler = new ItemRecycler<>(64);
+            int threads = 8;
+            int rounds = 50_000;
+            Set<Object> inUse = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+            AtomicInteger duplicates = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            for(int t = 0; t < threads; t++) {
+                workers[t] = new Thread(() -> {
+                    DispatchQueueTest.await(start);
+                    for(int i = 0; i < rounds; i++) {
+                        Object element = recycler.poll();
+                        if(element == null) {
+                            element = new Object();
+                        }
+                        // 同一个对象同时只能被一个线程取出
+                        if(!inUse.add(element)) {
+                            duplicates.incrementAndGet();
+                        }
+                        inUse.remove(element);
+                        recycler.offer(element);
+                    }
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for(Thread worker : workers) {
+                worker.join();
+            }
+            assertEquals(0, duplicates.get());
+            // 池中剩余的对象互不相同
+            Set<Object> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+            Object element;
+            while((element = recycler.poll()) != null) {
+                assertTrue(remaining.add(element));
+            }
+            assertTrue(remaining.size() <= recycler.capacity());
+        });
+    }
+
+    @Test
+    public void pollReturnsOfferedInstance() {
+        ItemRecycler<Object> recycler = new ItemRecycler<>(2);
+        Object element = new Object();
+        assertTrue(recycler.offer(element));
+        assertSame(element, recycler.poll());
+    }
+}
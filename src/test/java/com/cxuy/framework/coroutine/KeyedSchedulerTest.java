@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按键合并、防抖与节流
+ */
+public class KeyedSchedulerTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void coalesceRunsLatestTaskOnce() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-coalesce").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                List<Integer> executed = new CopyOnWriteArrayList<>();
+                for(int i = 0; i < 100; i++) {
+                    int value = i;
+                    queue.coalesce("key", (context) -> executed.add(value));
+                }
+                queue.coalesce("other", (context) -> executed.add(-1));
+                release.countDown();
+                queue.submit(() -> true).get();
+                assertEquals(List.of(99, -1), executed);
+
+                // 执行后再次提交会重新排队
+                queue.coalesce("key", (context) -> executed.add(100));
+                queue.submit(() -> true).get();
+                assertEquals(List.of(99, -1, 100), executed);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void coalesceRecoversWhenQueuedTaskIsDropped() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-coalesce-dropped")
+                .capacity(1, DispatchQueue.OverflowPolicy.DROP_OLDEST).build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                List<Integer> executed = new CopyOnWriteArrayList<>();
+                queue.coalesce("key", (context) -> executed.add(0));
+                // 名额已满，合并后的任务被丢弃
+                CountDownLatch dropped = new CountDownLatch(1);
+                queue.async((context) -> {
+                    executed.add(1);
+                    dropped.countDown();
+                });
+                release.countDown();
+                dropped.await();
+                // 名额有限，以闭锁等待而不是再提交任务，避免挤掉待验证的任务
+                CountDownLatch recovered = new CountDownLatch(1);
+                queue.coalesce("key", (context) -> {
+                    executed.add(2);
+                    recovered.countDown();
+                });
+                recovered.await();
+                assertEquals(List.of(1, 2), executed);
+            });
+        }
+        finally {
+            release.countDown();
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void debounceRunsOnceAfterQuietWindow() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-debounce").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<Integer> executed = new CopyOnWriteArrayList<>();
+                CountDownLatch fired = new CountDownLatch(1);
+                long start = System.nanoTime();
+                for(int i = 0; i < 10; i++) {
+                    int value = i;
+                    queue.debounce("key", 200, (context) -> {
+                        executed.add(value);
+                        fired.countDown();
+                    });
+                    Thread.sleep(10);
+                }
+                fired.await();
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                Thread.sleep(300);
+                assertEquals(List.of(9), executed);
+                assertTrue(elapsedMillis >= 290, "debounce fired before the last window ended");
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void debounceRecoversWhenSubmitFails() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-debounce-full")
+                .capacity(1, DispatchQueue.OverflowPolicy.FAIL_FAST).build();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch started = new CountDownLatch(1);
+                queue.async((context) -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                CountDownLatch filler = new CountDownLatch(1);
+                queue.async((context) -> filler.countDown());
+                assertThrows(DispatchQueue.DispatcherQueueIsFullException.class,
+                        () -> queue.debounce("key", 10, (context) -> { }));
+                release.countDown();
+                filler.await();
+                CountDownLatch fired = new CountDownLatch(1);
+                queue.debounce("key", 10, (context) -> fired.countDown());
+                fired.await();
+            });
+        }
+        finally {
+            release.countDown();
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void throttleRunsLeadingAndTrailing() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-throttle").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<Integer> executed = new CopyOnWriteArrayList<>();
+                CountDownLatch leading = new CountDownLatch(1);
+                CountDownLatch fired = new CountDownLatch(2);
+                queue.throttle("key", 200, (context) -> {
+                    executed.add(0);
+                    leading.countDown();
+                    fired.countDown();
+                });
+                leading.await();
+                for(int i = 1; i < 10; i++) {
+                    int value = i;
+                    queue.throttle("key", 200, (context) -> {
+                        executed.add(value);
+                        fired.countDown();
+                    });
+                }
+                fired.await();
+                Thread.sleep(300);
+                // 窗口内的提交合并为窗口结束时的一次，首次提交立即执行
+                assertEquals(List.of(0, 9), executed);
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void throttleRecoversFromThrowingTask() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-throttle-throw").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CountDownLatch thrown = new CountDownLatch(1);
+                queue.throttle("key", 50, (context) -> {
+                    thrown.countDown();
+                    throw new IllegalStateException("expected by test");
+                });
+                thrown.await();
+                // 抛出异常的任务同样会关闭窗口，之后的提交照常执行
+                CountDownLatch recovered = new CountDownLatch(1);
+                queue.throttle("key", 50, (context) -> recovered.countDown());
+                recovered.await();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 任务入口使用的多生产者单消费者队列
+ */
+public class MpscQueueTest {
+    private static final int PRODUCERS = 8;
+    private static final int ELEMENTS_PER_PRODUCER = 100_000;
+
+    @Test
+    public void singleThreadKeepsFifoOrder() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for(int i = 0; i < 100; i++) {
+            queue.offer(i);
+        }
+        for(int i = 0; i < 100; i++) {
+            assertEquals(i, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersLoseNothing() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            MpscQueue<long[]> queue = new MpscQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] producers = new Thread[PRODUCERS];
+            for(int p = 0; p < PRODUCERS; p++) {
+                int producer = p;
+                producers[p] = new Thread(() -> {
+                    DispatchQueueTest.await(start);
+                    for(int i = 0; i < ELEMENTS_PER_PRODUCER; i++) {
+                        queue.offer(new long[] { producer, i });
+                    }
+                });
+                producers[p].start();
+            }
+            start.countDown();
+            // 每个生产者的元素应按其提交顺序出队
+            int[] next = new int[PRODUCERS];
+            int received = 0;
+            while(received < PRODUCERS * ELEMENTS_PER_PRODUCER) {
+                long[] element = queue.poll();
+                if(element == null) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                int producer = (int) element[0];
+                assertEquals(next[producer], element[1]);
+                next[producer]++;
+                received++;
+            }
+            for(Thread producer : producers) {
+                producer.join();
+            }
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        });
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按优先级权重交错出队的就绪队列
+ */
+public class PriorityLanesTest {
+    @Test
+    public void lanesKeepFifoOrderWithinPriority() {
+        PriorityLanes<Integer> lanes = new PriorityLanes<>(false);
+        for(int i = 0; i < 10; i++) {
+            lanes.offer(DispatchQueue.Priority.DEFAULT, i);
+        }
+        for(int i = 0; i < 10; i++) {
+            assertEquals(i, lanes.poll());
+        }
+        assertNull(lanes.poll());
+        assertTrue(lanes.isEmpty());
+    }
+
+    @Test
+    public void nullPriorityFallsBackToDefault() {
+        PriorityLanes<String> lanes = new PriorityLanes<>(true);
+        lanes.offer(null, "default");
+        assertEquals("default", lanes.poll());
+        assertTrue(lanes.isEmpty());
+    }
+
+    @Test
+    public void backlogIsSharedByWeight() {
+        PriorityLanes<DispatchQueue.Priority> lanes = new PriorityLanes<>(false);
+        int total = 0;
+        for(DispatchQueue.Priority priority : DispatchQueue.Priority.values()) {
+            total += priority.weight;
+        }
+        int rounds = 100;
+        for(DispatchQueue.Priority priority : DispatchQueue.Priority.values()) {
+            for(int i = 0; i < total * rounds; i++) {
+                lanes.offer(priority, priority);
+            }
+        }
+        // 所有通道都有积压时，每轮按权重比例出队，低优先级也不会被饿死
+        int[] counts = new int[DispatchQueue.Priority.values().length];
+        for(int i = 0; i < total * rounds; i++) {
+            counts[lanes.poll().ordinal()]++;
+        }
+        for(DispatchQueue.Priority priority : DispatchQueue.Priority.values()) {
+            assertEquals(priority.weight * rounds, counts[priority.ordinal()]);
+        }
+    }
+
+    @Test
+    public void emptyLaneYieldsToOthers() {
+        PriorityLanes<Integer> lanes = new PriorityLanes<>(false);
+        for(int i = 0; i < 5; i++) {
+            lanes.offer(DispatchQueue.Priority.BACKGROUND, i);
+        }
+        List<Integer> polled = new ArrayList<>();
+        Integer element;
+        while((element = lanes.poll()) != null) {
+            polled.add(element);
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4), polled);
+    }
+
+    @Test
+    public void clearHandsOverEveryElement() {
+        PriorityLanes<Integer> lanes = new PriorityLanes<>(true);
+        for(int i = 0; i < 30; i++) {
+            lanes.offer(DispatchQueue.Priority.values()[i % 3], i);
+        }
+        List<Integer> cleared = new ArrayList<>();
+        lanes.clear(cleared::add);
+        assertEquals(30, cleared.size());
+        assertTrue(lanes.isEmpty());
+        assertNull(lanes.poll());
+    }
+}
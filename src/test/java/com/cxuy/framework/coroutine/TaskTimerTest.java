@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 延时任务的两种存储结构：HeapTaskTimer与TimingWheel
+ * <p>
+ * 时间均由用例传入，不依赖真实的流逝时间。
+ */
+public class TaskTimerTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void heapPollsInDeadlineOrder() {
+        TaskTimer timer = new HeapTaskTimer();
+        Random random = new Random(7);
+        List<DispatchQueue.TaskItem> items = new ArrayList<>();
+        for(int i = 0; i < 500; i++) {
+            DispatchQueue.TaskItem item = item(random.nextInt(2000), i);
+            items.add(item);
+            timer.add(item);
+        }
+        long end = latest(items) + MILLIS;
+        long previous = earliest(items);
+        DispatchQueue.TaskItem item;
+        int count = 0;
+        while((item = timer.pollExpired(end)) != null) {
+            assertTrue(item.getRunNanos() - previous >= 0);
+            previous = item.getRunNanos();
+            count++;
+        }
+        assertEquals(500, count);
+        assertEquals(0, timer.size());
+        assertEquals(-1, timer.nextDelay(end));
+    }
+
+    @Test
+    public void heapDoesNotExpireEarly() {
+        assertDoesNotExpireEarly(new HeapTaskTimer());
+    }
+
+    @Test
+    public void wheelDoesNotExpireEarly() {
+        assertDoesNotExpireEarly(new TimingWheel());
+    }
+
+    @Test
+    public void wheelKeepsTasksBeyondOneRound() {
+        // 4个槽位、每格1毫秒，一圈只有4毫秒
+        TimingWheel timer = new TimingWheel(1, 4);
+        DispatchQueue.TaskItem item = item(50, 0);
+        timer.add(item);
+        for(long now = item.getRunNanos() - 40 * MILLIS; now < item.getRunNanos(); now += MILLIS) {
+            assertNull(timer.pollExpired(now));
+            assertTrue(timer.nextDelay(now) <= item.getRunNanos() - now);
+        }
+        assertSame(item, timer.pollExpired(item.getRunNanos()));
+        assertEquals(0, timer.size());
+    }
+
+    @Test
+    public void wheelPollsEveryTaskOnce() {
+        TimingWheel timer = new TimingWheel(1, 64);
+        Random random = new Random(11);
+        List<DispatchQueue.TaskItem> items = new ArrayList<>();
+        for(int i = 0; i < 500; i++) {
+            DispatchQueue.TaskItem item = item(random.nextInt(500), i);
+            items.add(item);
+            timer.add(item);
+        }
+        Set<DispatchQueue.TaskItem> polled = identitySet();
+        long start = earliest(items);
+        long end = latest(items) + 2 * MILLIS;
+        for(long now = start; now <= end; now += MILLIS / 2) {
+            DispatchQueue.TaskItem item;
+            while((item = timer.pollExpired(now)) != null) {
+                assertTrue(item.getRunNanos() - now <= 0, "task expired before its deadline");
+                assertTrue(polled.add(item), "task polled twice");
+            }
+        }
+        assertEquals(items.size(), polled.size());
+        assertEquals(0, timer.size());
+    }
+
+    @Test
+    public void heapRemovesArbitraryTasks() {
+        assertRemovesArbitraryTasks(new HeapTaskTimer());
+    }
+
+    @Test
+    public void wheelRemovesArbitraryTasks() {
+        assertRemovesArbitraryTasks(new TimingWheel());
+    }
+
+    @Test
+    public void wheelRemovesAlreadyExpiredTask() {
+        TimingWheel timer = new TimingWheel();
+        DispatchQueue.TaskItem first = item(0, 0);
+        DispatchQueue.TaskItem second = item(0, 1);
+        timer.add(first);
+        timer.add(second);
+        long now = Math.max(first.getRunNanos(), second.getRunNanos()) + MILLIS;
+        DispatchQueue.TaskItem polled = timer.pollExpired(now);
+        DispatchQueue.TaskItem pending = polled == first ? second : first;
+        // 剩余的任务已转入到期列表，移除时仍需扣减数量
+        assertTrue(timer.remove(pending));
+        assertFalse(timer.remove(pending));
+        assertEquals(0, timer.size());
+        assertNull(timer.pollExpired(now));
+    }
+
+    @Test
+    public void heapClearHandsOverAllTasks() {
+        assertClearHandsOverAllTasks(new HeapTaskTimer());
+    }
+
+    @Test
+    public void wheelClearHandsOverAllTasks() {
+        assertClearHandsOverAllTasks(new TimingWheel());
+    }
+
+    private static void assertDoesNotExpireEarly(TaskTimer timer) {
+        DispatchQueue.TaskItem item = item(100, 0);
+        timer.add(item);
+        assertNull(timer.pollExpired(item.getRunNanos() - MILLIS));
+        long delay = timer.nextDelay(item.getRunNanos() - 10 * MILLIS);
+        assertTrue(delay > 0 && delay <= 10 * MILLIS);
+        assertEquals(1, timer.size());
+        assertSame(item, timer.pollExpired(item.getRunNanos()));
+        assertEquals(0, timer.size());
+    }
+
+    private static void assertRemovesArbitraryTasks(TaskTimer timer) {
+        List<DispatchQueue.TaskItem> items = new ArrayList<>();
+        for(int i = 0; i < 200; i++) {
+            DispatchQueue.TaskItem item = item(i % 37, i);
+            items.add(item);
+            timer.add(item);
+        }
+        Set<DispatchQueue.TaskItem> removed = identitySet();
+        for(int i = 0; i < items.size(); i += 3) {
+            assertTrue(timer.remove(items.get(i)));
+            assertFalse(timer.remove(items.get(i)));
+            removed.add(items.get(i));
+        }
+        assertEquals(items.size() - removed.size(), timer.size());
+        long end = latest(items) + 2 * MILLIS;
+        DispatchQueue.TaskItem item;
+        int count = 0;
+        while((item = timer.pollExpired(end)) != null) {
+            assertFalse(removed.contains(item));
+            count++;
+        }
+        assertEquals(items.size() - removed.size(), count);
+    }
+
+    private static void assertClearHandsOverAllTasks(TaskTimer timer) {
+        Set<DispatchQueue.TaskItem> items = identitySet();
+        for(int i = 0; i < 100; i++) {
+            DispatchQueue.TaskItem item = item(i * 10, i);
+            items.add(item);
+            timer.add(item);
+        }
+        Set<DispatchQueue.TaskItem> cleared = identitySet();
+        timer.clear(cleared::add);
+        assertEquals(items, cleared);
+        assertEquals(0, timer.size());
+        assertEquals(-1, timer.nextDelay(System.nanoTime()));
+    }
+
+    private static DispatchQueue.TaskItem item(long delay, long id) {
+        return new DispatchQueue.TaskItem(delay, (context) -> {  }, new DispatchContext(id, null));
+    }
+
+    /**
+     * TaskItem按到期时间与任务判断相等，统计时按实例区分
+     */
+    private static Set<DispatchQueue.TaskItem> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private static long earliest(List<DispatchQueue.TaskItem> items) {
+        long earliest = items.get(0).getRunNanos();
+        for(DispatchQueue.TaskItem item : items) {
+            if(item.getRunNanos() - earliest < 0) {
+                earliest = item.getRunNanos();
+            }
+        }
+        return earliest;
+    }
+
+    private static long latest(List<DispatchQueue.TaskItem> items) {
+        long latest = items.get(0).getRunNanos();
+        for(DispatchQueue.TaskItem item : items) {
+            if(item.getRunNanos() - latest > 0) {
+                latest = item.getRunNanos();
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.coroutine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * VirtualThreadExecutor的并发上限、排队优先级与关闭
+ */
+public class VirtualThreadExecutorTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final int LIMIT = 3;
+
+    @Test
+    public void runningTasksNeverExceedLimit() {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-virtual-limit", LIMIT);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                AtomicInteger running = new AtomicInteger();
+                AtomicInteger peak = new AtomicInteger();
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(LIMIT * 4);
+                for(int i = 0; i < LIMIT * 4; i++) {
+                    executor.execute(DispatchQueue.Priority.DEFAULT, () -> {
+                        peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        DispatchQueueTest.await(release);
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+                while(running.get() < LIMIT) {
+                    Thread.sleep(1);
+                }
+                Thread.sleep(50); // 给超出上限的任务留出被错误启动的机会
+                assertEquals(LIMIT, peak.get());
+                release.countDown();
+                done.await();
+                assertEquals(LIMIT, peak.get());
+            });
+        }
+        finally {
+            executor.shutdown(true);
+        }
+    }
+
+    @Test
+    public void queuedTasksRunByPriority() {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-virtual-priority", 1);
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                List<DispatchQueue.Priority> order = new CopyOnWriteArrayList<>();
+                CountDownLatch started = new CountDownLatch(1);
+                CountDownLatch release = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(2);
+                executor.execute(DispatchQueue.Priority.DEFAULT, () -> {
+                    started.countDown();
+                    DispatchQueueTest.await(release);
+                });
+                started.await();
+                executor.execute(DispatchQueue.Priority.BACKGROUND, () -> {
+                    order.add(DispatchQueue.Priority.BACKGROUND);
+                    done.countDown();
+                });
+                executor.execute(DispatchQueue.Priority.HIGH, () -> {
+                    order.add(DispatchQueue.Priority.HIGH);
+                    done.countDown();
+                });
+                release.countDown();
+                done.await();
+                assertEquals(List.of(DispatchQueue.Priority.HIGH, DispatchQueue.Priority.BACKGROUND), order);
+            });
+        }
+        finally {
+            executor.shutdown(true);
+        }
+    }
+
+    @Test
+    public void shutdownReturnsQueuedTasks() {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-virtual-shutdown", 1);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            AtomicInteger executed = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            executor.execute(DispatchQueue.Priority.DEFAULT, () -> {
+                started.countDown();
+                DispatchQueueTest.await(release);
+                executed.incrementAndGet();
+            });
+            started.await();
+            for(int i = 0; i < 5; i++) {
+                executor.execute(DispatchQueue.Priority.DEFAULT, executed::incrementAndGet);
+            }
+            List<Runnable> remaining = executor.shutdown(false);
+            assertEquals(5, remaining.size());
+            release.countDown();
+            executor.shutdown(true);
+            assertEquals(1, executed.get());
+            assertThrows(RejectedExecutionException.class,
+                    () -> executor.execute(DispatchQueue.Priority.DEFAULT, executed::incrementAndGet));
+        });
+    }
+}
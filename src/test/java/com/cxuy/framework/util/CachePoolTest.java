@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.util;
+
+import com.cxuy.framework.coroutine.DispatchFuture;
+import com.cxuy.framework.coroutine.DispatchQueue;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CachePool的读写、淘汰、过期与单次加载
+ * <p>
+ * 加载相关的用例先让加载函数停在门闩上，确认等待者已挂起后再放行，覆盖等待者与加载者交错的情形。
+ */
+public class CachePoolTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Test
+    public void putGetAndRemove() {
+        CachePool<String, String> pool = new CachePool<>();
+        pool.put("a", "1");
+        pool.put("a", "2");
+        pool.put(null, "ignored");
+        assertEquals("2", pool.get("a"));
+        assertTrue(pool.contains("a"));
+        assertEquals(1, pool.size());
+        assertEquals("2", pool.remove("a"));
+        assertNull(pool.remove("a"));
+        assertNull(pool.get("a"));
+        assertFalse(pool.contains("a"));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void getWithCallbackRunsOnCaller() {
+        CachePool<String, String> pool = new CachePool<>();
+        pool.put("a", "1");
+        List<String> seen = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+        pool.get("a", (target, key, model) -> {
+            assertSame(pool, target);
+            assertSame(caller, Thread.currentThread());
+            seen.add(key + "=" + model);
+        });
+        pool.get("b", (target, key, model) -> seen.add(key + "=" + model));
+        assertEquals(List.of("a=1", "b=null"), seen);
+    }
+
+    @Test
+    public void removeNotifiesEachListenerOnce() {
+        CachePool<String, String> pool = new CachePool<>();
+        List<String> removed = new ArrayList<>();
+        CachePool.ItemHasDeleted<String, String> listener = (target, key, model) -> removed.add(key + "=" + model);
+        pool.addRemoveListener(listener);
+        pool.addRemoveListener(listener);
+        pool.put("a", "1");
+        pool.put("b", "2");
+        // 同时作为单次监听者传入的已注册监听者只通知一次
+        pool.remove("a", listener);
+        pool.removeDeleteListener(listener);
+        pool.remove("b");
+        assertEquals(List.of("a=1"), removed);
+    }
+
+    @Test
+    public void concurrentWritersKeepEveryEntry() {
+        CachePool<Integer, Integer> pool = new CachePool<>();
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            Thread[] writers = new Thread[8];
+            for(int i = 0; i < writers.length; i++) {
+                int base = i * 1000;
+                writers[i] = new Thread(() -> {
+                    for(int key = base; key < base + 1000; key++) {
+                        pool.put(key, key);
+                        pool.put(key, -key);
+                        if(key % 10 == 0) {
+                            pool.remove(key);
+                        }
+                    }
+                });
+                writers[i].start();
+            }
+            for(Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(7200, pool.size());
+            assertEquals(-1, (int) pool.get(1));
+            assertNull(pool.get(10));
+        });
+    }
+
+    @Test
+    public void concurrentMissesLoadOnce() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, Integer> pool = new CachePool<>();
+            AtomicInteger loads = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Integer> results = new CopyOnWriteArrayList<>();
+            Thread[] readers = new Thread[16];
+            for(int i = 0; i < readers.length; i++) {
+                readers[i] = new Thread(() -> {
+                    await(start);
+                    results.add(pool.get("key", (key) -> {
+                        Thread.sleep(50);
+                        return loads.incrementAndGet();
+                    }));
+                });
+                readers[i].start();
+            }
+            start.countDown();
+            for(Thread reader : readers) {
+                reader.join();
+            }
+            assertEquals(1, loads.get());
+            assertEquals(readers.length, results.size());
+            for(Integer result : results) {
+                assertEquals(1, result);
+            }
+        });
+    }
+
+    @Test
+    public void concurrentAsyncMissesShareOneLoad() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cache-load").workers(4).build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CachePool<String, Integer> pool = new CachePool.Builder<String, Integer>().loadOn(queue).build();
+                AtomicInteger loads = new AtomicInteger();
+                CountDownLatch release = new CountDownLatch(1);
+                List<DispatchFuture<Integer>> futures = new ArrayList<>();
+                for(int i = 0; i < 32; i++) {
+                    futures.add(pool.getAsync("key", (key) -> {
+                        await(release);
+                        return loads.incrementAndGet();
+                    }));
+                }
+                release.countDown();
+                for(DispatchFuture<Integer> future : futures) {
+                    assertEquals(1, future.get());
+                }
+                assertEquals(1, loads.get());
+                // 命中时直接返回已完成的结果
+                DispatchFuture<Integer> hit = pool.getAsync("key", (key) -> loads.incrementAndGet());
+                assertTrue(hit.isDone());
+                assertEquals(1, hit.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void loaderExceptionReachesAllWaiters() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, String> pool = new CachePool<>();
+            IllegalStateException failure = new IllegalStateException("boom");
+            List<Throwable> errors = loadWithWaiters(pool, failure);
+            for(Throwable error : errors) {
+                assertInstanceOf(CachePool.CacheLoadException.class, error);
+                assertSame(failure, error.getCause());
+            }
+            // 失败的加载不会留在进行中的键里
+            assertEquals("value", pool.get("key", (key) -> "value"));
+        });
+    }
+
+    @Test
+    public void loaderErrorDoesNotHangWaiters() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, String> pool = new CachePool<>();
+            TestError failure = new TestError();
+            List<Throwable> errors = loadWithWaiters(pool, failure);
+            // 加载者收到Error本身，等待者收到包装后的异常
+            assertSame(failure, errors.get(0));
+            for(Throwable error : errors.subList(1, errors.size())) {
+                assertInstanceOf(CachePool.CacheLoadException.class, error);
+                assertSame(failure, error.getCause());
+            }
+            assertEquals("value", pool.get("key", (key) -> "value"));
+        });
+    }
+
+    @Test
+    public void asyncLoaderErrorFailsFuture() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cache-error").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CachePool<String, String> pool = new CachePool.Builder<String, String>().loadOn(queue).build();
+                DispatchFuture<String> future = pool.getAsync("key", (key) -> {
+                    throw new TestError();
+                });
+                ExecutionException error = assertThrows(ExecutionException.class, future::get);
+                assertInstanceOf(TestError.class, error.getCause());
+                assertEquals("value", pool.getAsync("key", (key) -> "value").get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void reentrantLoadFailsFast() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, String> pool = new CachePool<>();
+            AtomicReference<CachePool.Loader<String, String>> loader = new AtomicReference<>();
+            loader.set((key) -> pool.get(key, loader.get()));
+            CachePool.CacheLoadException error = assertThrows(CachePool.CacheLoadException.class, () -> pool.get("key", loader.get()));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+            assertEquals("value", pool.get("key", (key) -> "value"));
+        });
+    }
+
+    @Test
+    public void refreshFailureIsNotSeenByWaiters() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cache-refresh").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                        .refreshAfterWrite(20, TimeUnit.MILLISECONDS).loadOn(queue).build();
+                pool.put("key", "old");
+                Thread.sleep(40);
+                CountDownLatch refreshing = new CountDownLatch(1);
+                CountDownLatch release = new CountDownLatch(1);
+                // 刷新期间仍返回旧值
+                assertEquals("old", pool.get("key", (key) -> {
+                    refreshing.countDown();
+                    await(release);
+                    throw new IllegalStateException("refresh failed");
+                }));
+                refreshing.await();
+                // 旧值被移除后，未命中的调用者会等待进行中的刷新
+                pool.remove("key");
+                AtomicReference<Object> result = new AtomicReference<>();
+                Thread waiter = new Thread(() -> {
+                    try {
+                        result.set(pool.get("key", (key) -> "new"));
+                    }
+                    catch(Throwable e) {
+                        result.set(e);
+                    }
+                });
+                waiter.start();
+                awaitWaiting(waiter);
+                release.countDown();
+                waiter.join();
+                assertEquals("new", result.get());
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void expireAfterWriteRemovesEntry() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                    .expireAfterWrite(50, TimeUnit.MILLISECONDS).build();
+            List<String> removed = new CopyOnWriteArrayList<>();
+            pool.addRemoveListener((target, key, model) -> removed.add(key));
+            pool.put("key", "value");
+            pool.put("custom", "value", 10, TimeUnit.SECONDS);
+            assertEquals("value", pool.get("key"));
+            Thread.sleep(100);
+            assertNull(pool.get("key"));
+            assertFalse(pool.contains("key"));
+            assertTrue(pool.contains("custom"));
+            pool.cleanUp();
+            assertEquals(List.of("key"), removed);
+            assertEquals(1, pool.size());
+        });
+    }
+
+    @Test
+    public void expireAfterAccessKeepsActiveEntry() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                    .expireAfterAccess(100, TimeUnit.MILLISECONDS).build();
+            pool.put("active", "value");
+            pool.put("idle", "value");
+            for(int i = 0; i < 10; i++) {
+                Thread.sleep(20);
+                assertEquals("value", pool.get("active"));
+            }
+            assertNull(pool.get("idle"));
+            Thread.sleep(150);
+            assertNull(pool.get("active"));
+        });
+    }
+
+    @Test
+    public void cleanUpQueueRemovesExpiredEntries() {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cache-cleanup").build();
+        try {
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                        .expireAfterWrite(20, TimeUnit.MILLISECONDS).cleanUpOn(queue).build();
+                CountDownLatch removed = new CountDownLatch(1);
+                pool.addRemoveListener((target, key, model) -> removed.countDown());
+                pool.put("key", "value");
+                // 没有任何写入时也能收到过期通知
+                removed.await();
+                assertEquals(0, pool.size());
+                pool.close();
+            });
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void closeStopsScheduledCleanUp() throws InterruptedException {
+        DispatchQueue queue = new DispatchQueue.Builder().name("test-cache-close").build();
+        try {
+            CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                    .expireAfterWrite(20, TimeUnit.MILLISECONDS).cleanUpOn(queue).build();
+            pool.close();
+            pool.put("key", "value");
+            Thread.sleep(200);
+            // 定期清理已停止，过期条目仍留在池中，直到手动清理
+            assertNull(pool.get("key"));
+            assertEquals(1, pool.size());
+            pool.cleanUp();
+            assertEquals(0, pool.size());
+        }
+        finally {
+            queue.awaitShutdown();
+        }
+    }
+
+    @Test
+    public void lruEvictsLeastRecentlyUsed() {
+        CachePool<String, String> pool = new CachePool.Builder<String, String>().maximumSize(3).build();
+        pool.put("a", "a");
+        pool.put("b", "b");
+        pool.put("c", "c");
+        pool.get("a");
+        pool.put("d", "d");
+        pool.cleanUp();
+        assertTrue(pool.contains("a"));
+        assertFalse(pool.contains("b"));
+        assertTrue(pool.contains("c"));
+        assertTrue(pool.contains("d"));
+        assertEquals(3, pool.weightedSize());
+    }
+
+    @Test
+    public void maximumWeightEvictsByWeight() {
+        CachePool<String, String> pool = new CachePool.Builder<String, String>()
+                .maximumWeight(10, (key, model) -> model.length()).build();
+        pool.put("a", "aaaa");
+        pool.put("b", "bbbb");
+        pool.put("c", "cccc");
+        pool.cleanUp();
+        assertFalse(pool.contains("a"));
+        assertTrue(pool.weightedSize() <= 10);
+        assertEquals(8, pool.weightedSize());
+    }
+
+    @Test
+    public void tinyLfuResistsScan() {
+        CachePool<Integer, Integer> pool = new CachePool.Builder<Integer, Integer>()
+                .maximumSize(100).evictionPolicy(CachePool.EvictionPolicy.TINY_LFU).build();
+        for(int round = 0; round < 20; round++) {
+            for(int key = 0; key < 50; key++) {
+                if(pool.get(key) == null) {
+                    pool.put(key, key);
+                }
+            }
+        }
+        // 一次性访问的大量键不应把热点键挤出缓存
+        for(int key = 1000; key < 11_000; key++) {
+            pool.put(key, key);
+        }
+        pool.cleanUp();
+        int retained = 0;
+        for(int key = 0; key < 50; key++) {
+            if(pool.contains(key)) {
+                retained++;
+            }
+        }
+        assertTrue(retained >= 40, "only " + retained + " hot keys retained");
+        assertTrue(pool.weightedSize() <= 100);
+    }
+
+    /**
+     * 一个线程加载，另外几个线程在加载期间等待，加载以指定异常结束
+     *
+     * @return 各线程收到的异常，第一个为加载者的
+     */
+    private static List<Throwable> loadWithWaiters(CachePool<String, String> pool, Throwable failure) throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Throwable[] errors = new Throwable[4];
+        Thread[] threads = new Thread[errors.length];
+        for(int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    pool.get("key", (key) -> {
+                        if(index != 0) {
+                            return "unexpected";
+                        }
+                        loading.countDown();
+                        await(release);
+                        if(failure instanceof Error error) {
+                            throw error;
+                        }
+                        throw (Exception) failure;
+                    });
+                }
+                catch(Throwable e) {
+                    errors[index] = e;
+                }
+            });
+            if(i == 0) {
+                threads[i].start();
+                loading.await();
+            }
+            else {
+                threads[i].start();
+                awaitWaiting(threads[i]);
+            }
+        }
+        release.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        return Arrays.asList(errors);
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while(thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class TestError extends Error {
+        private static final long serialVersionUID = 1L;
+
+        TestError() {
+            super("test error");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2025 liangbeiyuan.
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.cxuy.framework.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 访问频率统计的计数上限、区分度与衰减
+ */
+public class FrequencySketchTest {
+    @Test
+    public void unsizedSketchCountsNothing() {
+        FrequencySketch<String> sketch = new FrequencySketch<>();
+        sketch.increment("a");
+        assertEquals(0, sketch.frequency("a"));
+    }
+
+    @Test
+    public void frequencySaturatesAtFifteen() {
+        FrequencySketch<String> sketch = new FrequencySketch<>();
+        sketch.ensureCapacity(64);
+        for(int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(5, sketch.frequency("a"));
+        for(int i = 0; i < 20; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    public void hotKeysOutrankColdKeys() {
+        FrequencySketch<Integer> sketch = new FrequencySketch<>();
+        sketch.ensureCapacity(1000);
+        for(int key = 0; key < 1000; key++) {
+            sketch.increment(key);
+        }
+        for(int i = 0; i < 10; i++) {
+            for(int key = 0; key < 10; key++) {
+                sketch.increment(key);
+            }
+        }
+        for(int key = 0; key < 10; key++) {
+            assertEquals(11, sketch.frequency(key));
+        }
+        // 冲突只会造成少量高估
+        int overestimated = 0;
+        for(int key = 10; key < 1000; key++) {
+            if(sketch.frequency(key) > 1) {
+                overestimated++;
+            }
+        }
+        assertTrue(overestimated < 20, "overestimated=" + overestimated);
+    }
+
+    @Test
+    public void countersHalveAfterSampleSize() {
+        FrequencySketch<String> sketch = new FrequencySketch<>();
+        sketch.ensureCapacity(8); // 记录80次后减半
+        for(int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        for(int i = 0; i < 64; i++) {
+            sketch.increment("cold" + i);
+        }
+        assertEquals(15, sketch.frequency("hot"));
+        sketch.increment("cold" + 64);
+        assertEquals(7, sketch.frequency("hot"));
+    }
+}